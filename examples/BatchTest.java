@@ -0,0 +1,51 @@
+// Assertions for batched calls: a call that does not even parse must not take
+// the other calls of its batch with it, neither live nor in the replay
+// jshell -R-ea -c lvp-0.4.0.jar examples/BatchTest.java
+import lvp.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+String recorded(Path file, String expected) throws Exception {
+    for (int i = 0; i < 200 && !Files.readString(file).contains(expected); i++) Thread.sleep(10);
+    return Files.readString(file);
+}
+
+Server server = Server.onPort(50_096);
+Path live = Files.createTempFile("batch", ".sse");
+server.record(live);
+try (var batch = server.batch()) {
+    server.call(null, "first();");
+    server.call(null, "textAt('it's', 10, 20);"); // what `Turtle.text("it's")` emits
+    server.call(null, "third(\"\\n\");");
+}
+
+// compiled as a whole; the first line lets script.js compile the calls one by
+// one, since `textAt('it's'...` is a SyntaxError for the whole batch
+String batched = """
+    data: //batch 49 64 53
+    data: try {
+    data: first();
+    data: } catch (e) { console.error(e); }
+    data: try {
+    data: textAt('it's', 10, 20);
+    data: } catch (e) { console.error(e); }
+    data: try {
+    data: third("\\n");
+    data: } catch (e) { console.error(e); }
+    """;
+
+assert recorded(live, "third").contains(batched);
+
+// a browser connecting now gets the calls folded into one frame the same way
+Path late = Files.createTempFile("replay", ".sse");
+server.record(late);
+assert recorded(late, "third").contains(batched);
+
+// a single call is sent as is
+server.call(null, "fourth();");
+assert recorded(live, "fourth").contains("event: CALL\ndata: fourth();\n\n");
+
+server.stop();
+Files.delete(live);
+Files.delete(late);
+/exit
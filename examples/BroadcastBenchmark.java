@@ -0,0 +1,29 @@
+// Microbenchmark: bytes allocated by the caller per broadcast event
+// jshell -c lvp-0.4.0.jar examples/BroadcastBenchmark.java
+import lvp.*;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+
+com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+long allocatedPerEvent(Server server, String payload, int events) {
+    long tid = Thread.currentThread().getId();
+    for (int i = 0; i < events; i++) Clerk.call(server, payload); // warm-up
+    long before = threads.getThreadAllocatedBytes(tid);
+    for (int i = 0; i < events; i++) Clerk.call(server, payload);
+    return (threads.getThreadAllocatedBytes(tid) - before) / events;
+}
+
+Server server = Clerk.serve(50_099);
+String payload = "turtle1234.forward(10.0);".repeat(8);
+
+for (int clients : new int[]{0, 1, 10, 100}) {
+    server.sseClientConnections.forEach(SSEClient::close);
+    for (int i = 0; i < clients; i++)
+        server.sseClientConnections.add(new SSEClient(OutputStream.nullOutputStream(), 65_536,
+                                                      SSEClient.Overflow.DROP_OLDEST,
+                                                      server.sseClientConnections::remove).start());
+    System.out.printf("%3d clients: %5d bytes allocated per event%n", clients, allocatedPerEvent(server, payload, 20_000));
+}
+
+server.stop();
@@ -0,0 +1,91 @@
+// Input-to-redraw latency of TurtleSliderExample via SSE + POST and via WebSocket:
+// time from sending a slider value until its RELEASE arrives, which the server
+// sends right after the turtle's redraw
+// jshell -c lvp-0.4.0.jar examples/InputLatencyBenchmark.java
+import lvp.*;
+import lvp.views.*;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.util.concurrent.*;
+
+Server server = Clerk.serve(50_096);
+server.enableWebSocket();
+String base = "http://localhost:50096";
+HttpClient http = HttpClient.newHttpClient();
+
+Turtle turtle = new Turtle(server, 300, 350);
+
+void triangle(Turtle turtle, double size) {
+    turtle.forward(size).right(60).backward(size).right(60).forward(size).right(60 + 180);
+}
+
+void drawing(Turtle turtle, double size) {
+    for (int i = 1; i <= 36; i++) {
+        turtle.color(255,i * 256 / 37, i * 256 / 37);
+        turtle.lineWidth(1.0 - 1.0 / 36.0 * i);
+        triangle(turtle, size + 1 - 2 * i);
+        turtle.left(10).forward(10);
+    }
+}
+
+Slider slider = new Slider(server, 10, 200);
+slider.attachTo(response -> {
+    double size = Double.parseDouble(response);
+    turtle.reset();
+    drawing(turtle, size);
+});
+
+// RELEASEs seen by the benchmark's clients
+BlockingQueue<String> releases = new LinkedBlockingQueue<>();
+
+String report(String name, List<Long> nanos) {
+    List<Long> sorted = nanos.stream().sorted().toList();
+    return String.format("%-10s p50 %6.2f ms  p99 %6.2f ms", name,
+                         sorted.get(sorted.size() / 2) / 1e6, sorted.get(sorted.size() * 99 / 100) / 1e6);
+}
+
+// SSE + POST, as a browser without WebSocket does it
+http.sendAsync(HttpRequest.newBuilder(URI.create(base + "/events?client=sse")).build(), HttpResponse.BodyHandlers.ofLines()).
+     thenAccept(response -> response.body().filter(line -> line.equals("event: RELEASE")).forEach(releases::add));
+Thread.sleep(500);
+List<Long> sse = new ArrayList<>();
+for (int i = 0; i < 600; i++) {
+    long start = System.nanoTime();
+    http.send(HttpRequest.newBuilder(URI.create(base + "/slider" + slider.ID + "?client=sse"))
+                         .POST(HttpRequest.BodyPublishers.ofString("" + (10 + i % 190))).build(),
+              HttpResponse.BodyHandlers.discarding());
+    releases.take();
+    if (i >= 100) sse.add(System.nanoTime() - start); // the first 100 warm up
+}
+
+// WebSocket: values and events share one connection
+String port = http.send(HttpRequest.newBuilder(URI.create(base + "/websocket")).build(),
+                        HttpResponse.BodyHandlers.ofString()).body();
+WebSocket ws = http.newWebSocketBuilder().buildAsync(URI.create("ws://localhost:" + port + "/?client=ws"), new WebSocket.Listener() {
+    StringBuilder message = new StringBuilder();
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        message.append(data);
+        if (last) {
+            if (message.indexOf("event: RELEASE") >= 0) releases.add("RELEASE");
+            message.setLength(0);
+        }
+        webSocket.request(1);
+        return null;
+    }
+}).join();
+Thread.sleep(500);
+releases.clear();
+List<Long> webSocket = new ArrayList<>();
+for (int i = 0; i < 600; i++) {
+    long start = System.nanoTime();
+    ws.sendText("input /slider" + slider.ID + "\n" + (10 + i % 190), true).join();
+    releases.take();
+    if (i >= 100) webSocket.add(System.nanoTime() - start);
+}
+
+System.out.println(report("SSE + POST", sse));
+System.out.println(report("WebSocket", webSocket));
+server.stop();
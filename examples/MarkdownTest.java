@@ -0,0 +1,75 @@
+// Assertions for the markdown renderer
+// jshell -R-ea -c lvp-0.4.0.jar examples/MarkdownTest.java
+import lvp.skills.Markdown;
+
+// headings, ATX and setext
+assert Markdown.render("# Title\n\nSetext\n===\n\n## Sub ##").equals(
+    "<h1>Title</h1>\n<h1>Setext</h1>\n<h2>Sub</h2>\n");
+
+// lists: tight, nested, ordered with a start, loose
+assert Markdown.render("- one\n- two\n  - nested\n\n1. a\n2. b").equals(
+    "<ul>\n<li>one</li>\n<li>two\n<ul>\n<li>nested</li>\n</ul>\n</li>\n</ul>\n<ol>\n<li>a</li>\n<li>b</li>\n</ol>\n");
+
+assert Markdown.render("3) x\n\n- a\n\n- b").equals(
+    "<ol start=\"3\">\n<li>x</li>\n</ol>\n<ul>\n<li><p>a</p>\n</li>\n<li><p>b</p>\n</li>\n</ul>\n");
+
+// tables with alignment, an escaped pipe in a code span
+assert Markdown.render("| a | b |\n|:--|--:|\n| `x\\|y` | *z* |").equals("""
+    <table>
+    <thead>
+    <tr>
+    <th style="text-align:left">a</th>
+    <th style="text-align:right">b</th>
+    </tr>
+    </thead>
+    <tbody>
+    <tr>
+    <td style="text-align:left"><code>x|y</code></td>
+    <td style="text-align:right"><em>z</em></td>
+    </tr>
+    </tbody>
+    </table>
+    """);
+
+// emphasis; `_` only at word boundaries
+assert Markdown.render("*em* **strong** ***both*** snake_case_name ~~del~~").equals(
+    "<p><em>em</em> <strong>strong</strong> <em><strong>both</strong></em> snake_case_name <del>del</del></p>\n");
+
+// escaping of markdown and HTML, entities stay
+assert Markdown.render("\\*not em\\* 1 < 2 & \"q\" &amp;").equals(
+    "<p>*not em* 1 &lt; 2 &amp; &quot;q&quot; &amp;</p>\n");
+
+// math inline and as a block; a price is no math
+assert Markdown.render("Euler $e^{i\\pi} = -1$ costs $5 and $$x^2$$\n\n$$\n\\sum_i i\n$$").equals(
+    "<p>Euler <span class=\"math\">\\(e^{i\\pi} = -1\\)</span> costs $5 and <span class=\"math display\">\\[x^2\\]</span></p>\n" +
+    "<div class=\"math\">\\[\\sum_i i\\]</div>\n");
+
+// emphasis does not end within math
+assert Markdown.render("*a $x*y$ b* and **$$a**b$$**").equals(
+    "<p><em>a <span class=\"math\">\\(x*y\\)</span> b</em> and <strong><span class=\"math display\">\\[a**b\\]</span></strong></p>\n");
+
+// links, images, autolinks
+assert Markdown.render("[link](http://x.org \"T\") ![img](a.png) <http://a.b> see https://c.d.").equals(
+    "<p><a href=\"http://x.org\" title=\"T\">link</a> <img src=\"a.png\" alt=\"img\"> " +
+    "<a href=\"http://a.b\">http://a.b</a> see <a href=\"https://c.d\">https://c.d</a>.</p>\n");
+
+// fenced code keeps its tabs
+assert Markdown.render("```java\nclass A {\n\tint x;\n}\n```").equals(
+    "<pre><code class=\"language-java\">class A {\n\tint x;\n}\n</code></pre>\n");
+
+assert Markdown.render("```make\nall:\n\tcc -o a a.c\n```").equals(
+    "<pre><code class=\"language-make\">all:\n\tcc -o a a.c\n</code></pre>\n");
+
+// a tab indents code by a tab stop of 4 columns; tabs after the indentation stay
+assert Markdown.render("\tint x;\n\t\treturn x;\n    y\tz").equals(
+    "<pre><code>int x;\n\treturn x;\ny\tz\n</code></pre>\n");
+
+assert Markdown.render("  \tafter two spaces and a tab").equals(
+    "<pre><code>after two spaces and a tab\n</code></pre>\n");
+
+// within a list item a tab counts as far as the next tab stop
+assert Markdown.render("- item\n\n\t```\n\tif (a)\n\t\tb();\n\t```").equals(
+    "<ul>\n<li><p>item</p>\n<pre><code>if (a)\n\tb();\n</code></pre>\n</li>\n</ul>\n");
+
+assert Markdown.render("-\titem").equals("<ul>\n<li>item</li>\n</ul>\n");
+/exit
@@ -0,0 +1,8 @@
+// Records the session of logo.java for the replay benchmark in web/bench.html
+// jshell -c lvp-0.4.0.jar examples/RecordSession.java
+// then open http://localhost:50001/web/bench.html?recording=/recording
+import lvp.*;
+import java.nio.file.Path;
+
+Clerk.serve().record(Path.of("logo.sse"));
+/open logo.java
@@ -0,0 +1,64 @@
+// Load test: 200 open SSE connections while a flood of slider posts and static
+// file requests hits the server; compares the default executor with the former
+// fixed pool of 5 threads
+// jshell -c lvp-0.4.0.jar examples/ServerLoadTest.java
+import lvp.*;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.*;
+
+HttpClient http = HttpClient.newBuilder().executor(Executors.newCachedThreadPool()).build();
+
+long[] percentiles(List<Long> nanos) {
+    List<Long> sorted = nanos.stream().sorted().toList();
+    return new long[]{ sorted.get(sorted.size() / 2) / 1_000_000, sorted.get(sorted.size() * 99 / 100) / 1_000_000 };
+}
+
+void loadTest(String name, int port, Executor executor) throws Exception {
+    Server server = Server.onPort(port, executor);
+    server.createResponseContext("/slider", value -> {
+        try { Thread.sleep(20); } catch (InterruptedException e) {} // the slider redraws something
+        Clerk.call(server, "console.log(" + value + ")");
+    });
+    String base = "http://localhost:" + port;
+
+    for (int i = 0; i < 200; i++)
+        http.sendAsync(HttpRequest.newBuilder(URI.create(base + "/events?client=c" + i)).build(),
+                       HttpResponse.BodyHandlers.discarding());
+    while (server.sseClientConnections.size() < 200) Thread.sleep(10);
+
+    List<Long> posts = new CopyOnWriteArrayList<>(), gets = new CopyOnWriteArrayList<>();
+    ExecutorService load = Executors.newFixedThreadPool(64);
+    long start = System.nanoTime();
+    for (int i = 0; i < 2_000; i++) {
+        final int value = i;
+        load.submit(() -> {
+            long t = System.nanoTime();
+            http.send(HttpRequest.newBuilder(URI.create(base + "/slider"))
+                                 .POST(HttpRequest.BodyPublishers.ofString("" + value)).build(),
+                      HttpResponse.BodyHandlers.discarding());
+            posts.add(System.nanoTime() - t);
+            return null;
+        });
+        if (i % 10 == 0) load.submit(() -> {
+            long t = System.nanoTime();
+            http.send(HttpRequest.newBuilder(URI.create(base + "/web/script.js")).build(),
+                      HttpResponse.BodyHandlers.discarding());
+            gets.add(System.nanoTime() - t);
+            return null;
+        });
+    }
+    load.shutdown();
+    load.awaitTermination(5, TimeUnit.MINUTES);
+    long millis = (System.nanoTime() - start) / 1_000_000;
+    long[] post = percentiles(posts), get = percentiles(gets);
+    System.out.printf("%-16s %5d ms, %3d SSE clients, posts p50 %4d ms p99 %4d ms, static files p50 %4d ms p99 %4d ms%n",
+                      name, millis, server.sseClientConnections.size(), post[0], post[1], get[0], get[1]);
+    server.stop();
+}
+
+loadTest("warm-up", 50_099, null);
+loadTest("default", 50_098, null);
+loadTest("fixed pool of 5", 50_097, Executors.newFixedThreadPool(5));
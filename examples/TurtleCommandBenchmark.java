@@ -0,0 +1,75 @@
+// Benchmark: Turtle commands as generated JavaScript strings vs. binary command stream
+// jshell -c lvp-0.4.0.jar examples/TurtleCommandBenchmark.java
+import lvp.*;
+import lvp.views.Turtle;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+AtomicLong wireBytes = new AtomicLong();
+Server server = Clerk.serve(50_098);
+server.sseClientConnections.add(new SSEClient(new OutputStream() {
+    public void write(int b) { wireBytes.incrementAndGet(); }
+    public void write(byte[] b, int off, int len) { wireBytes.addAndGet(len); }
+}, 65_536, SSEClient.Overflow.BLOCK, server.sseClientConnections::remove).start());
+
+Turtle turtle = new Turtle(server, 500, 500);
+
+// today's string-eval path, one generated JavaScript statement per command
+void stringTree(String t, double size) {
+    if (size < 10) {
+        Clerk.call(server, t + ".forward(" + size + ");");
+        Clerk.call(server, t + ".backward(" + size + ");");
+        return;
+    }
+    Clerk.call(server, t + ".forward(" + size / 3 + ");");
+    Clerk.call(server, t + ".left(30.0);");
+    stringTree(t, size * 2.0 / 3.0);
+    Clerk.call(server, t + ".right(30.0);");
+    Clerk.call(server, t + ".forward(" + size / 6 + ");");
+    Clerk.call(server, t + ".right(25.0);");
+    stringTree(t, size / 2.0);
+    Clerk.call(server, t + ".left(25.0);");
+    Clerk.call(server, t + ".forward(" + size / 3 + ");");
+    Clerk.call(server, t + ".right(25.0);");
+    stringTree(t, size / 2.0);
+    Clerk.call(server, t + ".left(25.0);");
+    Clerk.call(server, t + ".forward(" + size / 6 + ");");
+    Clerk.call(server, t + ".backward(" + size + ");");
+}
+
+void binaryTree(Turtle turtle, double size) {
+    if (size < 10) {
+        turtle.forward(size).backward(size);
+        return;
+    }
+    turtle.forward(size / 3).left(30);
+    binaryTree(turtle, size * 2.0 / 3.0);
+    turtle.right(30).forward(size / 6).right(25);
+    binaryTree(turtle, size / 2.0);
+    turtle.left(25).forward(size / 3).right(25);
+    binaryTree(turtle, size / 2.0);
+    turtle.left(25).forward(size / 6).backward(size);
+}
+
+long commands(double size) { return size < 10 ? 2 : 11 + commands(size * 2.0 / 3.0) + 2 * commands(size / 2.0); }
+
+void measure(String name, Runnable drawing, long count) throws InterruptedException {
+    for (int i = 0; i < 5; i++) drawing.run(); // warm-up
+    server.flush();
+    Thread.sleep(200);
+    wireBytes.set(0);
+    int rounds = 20;
+    long start = System.nanoTime();
+    for (int i = 0; i < rounds; i++) drawing.run();
+    server.flush();
+    double seconds = (System.nanoTime() - start) / 1e9;
+    Thread.sleep(200);
+    System.out.printf("%-7s %,12.0f commands/s %8.1f bytes/command%n", name,
+                      rounds * count / seconds, wireBytes.get() / (double) (rounds * count));
+}
+
+long count = commands(150);
+measure("string", () -> stringTree("turtle" + turtle.ID, 150), count);
+measure("binary", () -> binaryTree(turtle, 150), count);
+
+server.stop();
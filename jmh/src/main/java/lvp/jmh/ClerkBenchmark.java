@@ -0,0 +1,72 @@
+package lvp.jmh;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import lvp.Clerk;
+import lvp.SSEClient;
+import lvp.SSEType;
+import lvp.Server;
+
+// Clerk → Server → wire: encoding an event, logging it for replay and queueing
+// it for every client. The clients write to null sinks, so only the server's
+// side is measured; with a batch window > 0, calls are coalesced by the batcher.
+// `replayLimit` 0 switches the replay log off, which shows what logging costs.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClerkBenchmark {
+    @Param({ "0", "1", "10", "100" })
+    int clients;
+
+    @Param({ "0", "5" })
+    long batchWindowMillis;
+
+    @Param({ "default", "0" })
+    String replayLimit;
+
+    Server server;
+    int i = 0;
+
+    static final String html = "<div class='cell'><p>Lorem ipsum dolor sit amet, consectetur adipiscing elit.</p></div>";
+    static final String javascript = "turtle1234.textAt('Lorem ipsum', '10px sans-serif', 'center', 250.0, 250.0, 0.0)";
+
+    @Setup(Level.Trial)
+    public void start() {
+        server = Server.onPort(50_090);
+        server.setBatching(batchWindowMillis, 64 * 1024);
+        if (!replayLimit.equals("default")) server.setReplayLimit(Long.parseLong(replayLimit));
+        for (int c = 0; c < clients; c++)
+            server.sseClientConnections.add(new SSEClient(OutputStream.nullOutputStream(), 65_536,
+                                                          SSEClient.Overflow.DROP_OLDEST,
+                                                          server.sseClientConnections::remove).start());
+    }
+
+    // keeps the replay log from growing across iterations
+    @Setup(Level.Iteration)
+    public void clear() { Clerk.clear(server); }
+
+    @TearDown(Level.Trial)
+    public void stop() { server.stop(); }
+
+    @Benchmark
+    public void write() { Clerk.write(server, html); }
+
+    @Benchmark
+    public void call() { Clerk.call(server, javascript); }
+
+    @Benchmark
+    public void script() { Clerk.script(server, javascript); }
+
+    @Benchmark
+    public void sendServerEvent() { server.sendServerEvent(SSEType.WRITE, html); }
+
+    // payloads that differ from call to call, as produced by a loop in a notebook
+    @Benchmark
+    public void callDistinct() { Clerk.call(server, "turtle1234.forward(" + (i++ % 1000) + ")"); }
+}
@@ -0,0 +1,42 @@
+package lvp.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import lvp.skills.Markdown;
+
+// Markdown rendered in Java: a notebook-sized text rendered from scratch and
+// the lookup that a notebook run again costs
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarkdownBenchmark {
+    @Param({ "10", "100" })
+    int sections;
+
+    String markdown;
+
+    @Setup
+    public void setUp() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < sections; i++) {
+            text.append("## Section ").append(i).append("\n\n")
+                .append("Some *emphasis*, **strong** text, `code` and a [link](https://example.com/").append(i).append("),\n")
+                .append("a formula $x_").append(i).append(" = \\frac{1}{2}$ and https://example.com/bare.\n\n")
+                .append("- first item\n- second item\n  - nested\n\n")
+                .append("```java\nint x = ").append(i).append(";\nSystem.out.println(x < 10);\n```\n\n")
+                .append("| a | b |\n|---|---|\n| 1 | 2 |\n\n");
+        }
+        markdown = text.toString();
+    }
+
+    @Benchmark
+    public String render() { return Markdown.render(markdown); }
+
+    @Benchmark
+    public String cached() { return Markdown.toHtml(markdown); }
+}
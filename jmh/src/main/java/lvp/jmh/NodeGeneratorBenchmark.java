@@ -0,0 +1,59 @@
+package lvp.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import lvp.skills.NodeGenerator;
+
+// Object inspection for the Dot view on large object graphs: a balanced binary
+// tree whose nodes also share a list and point back to the root
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NodeGeneratorBenchmark {
+    // only public fields are inspected
+    public static class Node {
+        public int value;
+        public String label;
+        public Node left, right, root;
+        public List<Integer> shared;
+
+        Node(int value) {
+            this.value = value;
+            label = "node " + value;
+        }
+    }
+
+    @Param({ "100", "1000", "5000" })
+    int nodes;
+
+    Node root;
+
+    @Setup
+    public void setUp() {
+        List<Integer> shared = new ArrayList<>(List.of(1, 2, 3));
+        List<Node> all = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) all.add(new Node(i));
+        root = all.get(0);
+        for (int i = 0; i < nodes; i++) {
+            Node node = all.get(i);
+            if (2 * i + 1 < nodes) node.left = all.get(2 * i + 1);
+            if (2 * i + 2 < nodes) node.right = all.get(2 * i + 2);
+            node.root = root;
+            node.shared = shared;
+        }
+    }
+
+    @Benchmark
+    public NodeGenerator inspect() { return NodeGenerator.inspect(root, "root"); }
+
+    // the dot source the Dot view renders
+    @Benchmark
+    public String inspectToDot() { return NodeGenerator.inspect(root, "root").toString(); }
+}
@@ -0,0 +1,57 @@
+package lvp.jmh;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import lvp.skills.Text;
+
+// The Text skill as used for literate programs: snippets cut out of a source
+// file and templates filled out with values
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextBenchmark {
+    @Param({ "100", "10000" })
+    int lines;
+
+    Path file;
+    String template;
+    Map<String, Object> replacements;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            if (i == lines / 2) source.append("// snippet\n");
+            source.append("    int value").append(i).append(" = ").append(i).append(";\n");
+            if (i == lines / 2 + 20) source.append("// snippet\n");
+        }
+        file = Files.createTempFile("lvp-text", ".java");
+        Files.writeString(file, source.toString());
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) text.append("Line ").append(i).append(": ${").append(i % 10).append("} and ${").append((i + 5) % 10).append("}\n");
+        template = text.toString();
+        replacements = Map.of("0", 0, "1", 1, "2", 2, "3", 3, "4", 4, "5", 5, "6", 6, "7", 7, "8", 8, "9", 9);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException { Files.deleteIfExists(file); }
+
+    @Benchmark
+    public String cutOut() { return Text.cutOut(file, "// snippet"); }
+
+    @Benchmark
+    public String fillOutVarargs() { return Text.fillOut(template, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9); }
+
+    @Benchmark
+    public String fillOutMap() { return Text.fillOut(template, replacements); }
+}
@@ -0,0 +1,19 @@
+package lvp;
+
+import java.util.List;
+
+// A JS library a view needs in the browser. Assets are loaded in parallel
+// unless one has to wait for the assets listed in `dependsOn`.
+public record Asset(String path, List<Asset> dependsOn) {
+    public Asset {
+        path = path.trim();
+        dependsOn = List.copyOf(dependsOn);
+    }
+
+    public static Asset of(String path, Asset... dependsOn) { return new Asset(path, List.of(dependsOn)); }
+
+    // the browser uses `offlinePath` (served by `Server`) and keeps `onlinePath` as an alternative
+    public static Asset of(String onlinePath, String offlinePath, Asset... dependsOn) {
+        return of(offlinePath + ", " + onlinePath, dependsOn);
+    }
+}
@@ -0,0 +1,148 @@
+package lvp;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Coalesces consecutive `SSEType.CALL` events into a single frame. Pending calls
+// are sent when the time window expires, when the size limit is reached, when
+// any other event type must go out, or when `flush` is called explicitly.
+class Batcher {
+    // one call of a batch; `view` names the view it draws on, if any (see `EventLog`)
+    record Part(String view, String javascript) {}
+
+    private final Consumer<List<Part>> sendCalls;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(Threads.factory);
+    private List<Part> parts = new ArrayList<>();
+    private int size = 0; // characters of all parts
+    private int depth = 0; // nesting level of open `Batch` scopes
+    private ScheduledFuture<?> scheduledFlush;
+
+    // binary commands for the same JS object are collected into one `run` call
+    private final ByteArrayOutputStream commands = new ByteArrayOutputStream();
+    private String commandTarget;
+
+    // producers of binary commands that are asked for their output only right
+    // before anything else is sent, so they can keep compacting until then
+    private final Map<String, Supplier<byte[]>> deferred = new LinkedHashMap<>();
+
+    long windowMillis = 5;
+    int maxChars = 64 * 1024;
+
+    Batcher(Consumer<List<Part>> sendCalls) { this.sendCalls = sendCalls; }
+
+    static String run(String target, byte[] commands) {
+        return target + ".run('" + Base64.getEncoder().encodeToString(commands) + "');";
+    }
+
+    // A single call is sent as is. A batch is compiled as a whole, each call in a
+    // block with its own error handling. A call that does not even parse would
+    // spoil the whole batch, so its first line lists the lengths of the blocks,
+    // and script.js compiles them one by one if the batch does not compile.
+    static String join(List<String> calls) {
+        if (calls.size() == 1) return calls.get(0);
+        StringBuilder header = new StringBuilder("//batch");
+        StringBuilder blocks = new StringBuilder();
+        for (String call : calls) {
+            int start = blocks.length();
+            // the browser gets every line break as \n, see `Server.encode`
+            if (call.indexOf('\r') >= 0) call = call.replace("\r\n", "\n").replace('\r', '\n');
+            blocks.append("try {\n").append(call).append("\n} catch (e) { console.error(e); }\n");
+            header.append(' ').append(blocks.length() - start);
+        }
+        return header.append('\n').append(blocks).toString();
+    }
+
+    // returns false if batching is switched off and the call must be sent directly
+    synchronized boolean add(String view, String javascript) {
+        if (windowMillis <= 0 && depth == 0) return false;
+        drainDeferred();
+        closeCommands();
+        append(view, javascript);
+        return true;
+    }
+
+    synchronized boolean command(String target, byte[] command) {
+        if (windowMillis <= 0 && depth == 0) return false;
+        drainDeferred();
+        appendCommands(target, command);
+        return true;
+    }
+
+    synchronized void defer(String target, Supplier<byte[]> drain) {
+        deferred.putIfAbsent(target, drain);
+        if (windowMillis <= 0 && depth == 0) flush();
+        else schedule();
+    }
+
+    private void drainDeferred() {
+        for (Map.Entry<String, Supplier<byte[]>> entry : new ArrayList<>(deferred.entrySet())) {
+            deferred.remove(entry.getKey());
+            byte[] bytes = entry.getValue().get();
+            if (bytes.length > 0) appendCommands(entry.getKey(), bytes);
+        }
+    }
+
+    private void appendCommands(String target, byte[] command) {
+        if (!target.equals(commandTarget)) {
+            closeCommands();
+            commandTarget = target;
+        }
+        commands.write(command, 0, command.length);
+        if (commands.size() * 4 / 3 + size >= maxChars) flush(); // Base64 grows by 4/3
+        else schedule();
+    }
+
+    private void closeCommands() {
+        if (commands.size() == 0) return;
+        byte[] bytes = commands.toByteArray();
+        commands.reset();
+        append(commandTarget, run(commandTarget, bytes));
+    }
+
+    private void append(String view, String javascript) {
+        parts.add(new Part(view, javascript));
+        size += javascript.length();
+        if (size >= maxChars) flush();
+        else schedule();
+    }
+
+    private void schedule() {
+        if (depth == 0 && scheduledFlush == null)
+            scheduledFlush = timer.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void flush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        drainDeferred();
+        closeCommands();
+        if (parts.isEmpty()) return;
+        List<Part> batch = parts;
+        parts = new ArrayList<>();
+        size = 0;
+        sendCalls.accept(batch);
+    }
+
+    synchronized void open() { depth++; }
+
+    synchronized void close() {
+        if (depth > 0 && --depth == 0) flush();
+    }
+
+    void shutdown() {
+        flush();
+        timer.shutdownNow();
+    }
+}
@@ -1,5 +1,6 @@
 package lvp;
 
+import java.util.List;
 import java.util.Random;
 import java.util.stream.Collectors;
 
@@ -14,18 +15,39 @@ public interface Clerk {
 
     static String getHashID(Object o) { return Integer.toHexString(o.hashCode()); }
 
+    // a JavaScript string literal, escaped in one pass, for text in generated calls
+    static String jsString(String text) {
+        StringBuilder literal = new StringBuilder(text.length() + 16).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> literal.append("\\\"");
+                case '\\' -> literal.append("\\\\");
+                case '\n' -> literal.append("\\n");
+                case '\r' -> literal.append("\\r");
+                case '\u2028' -> literal.append("\\u2028");
+                case '\u2029' -> literal.append("\\u2029");
+                default -> literal.append(c);
+            }
+        }
+        return literal.append('"').toString();
+    }
+
     static Server serve(int port) { return Server.onPort(port); }
     static Server serve() { return serve(Server.getDefaultPort()); }
 
     static void write(Server server, String html)        { server.sendServerEvent(SSEType.WRITE, html); }
+    static void write(Server server, String cellId, String html) { server.writeCell(cellId, html); }
     static void call(Server server, String javascript)   { server.sendServerEvent(SSEType.CALL, javascript); }
     static void script(Server server, String javascript) { server.sendServerEvent(SSEType.SCRIPT, javascript); }
-    static void load(Server server, String path) {
-        if (!server.paths.contains(path.trim())) server.sendServerEvent(SSEType.LOAD, path);
-    }
+    static void load(Server server, Asset... assets) { server.load(List.of(assets)); }
+    static void load(Server server, List<Asset> assets) { server.load(assets); }
+    static void load(Server server, String path) { load(server, Asset.of(path)); }
     static void load(Server server, String onlinePath, String offlinePath) {
-        load(server, offlinePath + ", " + onlinePath);
+        load(server, Asset.of(onlinePath, offlinePath));
     }
+    static void flush(Server server) { server.flush(); }
+    static Server.Batch batch(Server server) { return server.batch(); }
     static void clear(Server server) { server.sendServerEvent(SSEType.CLEAR, ""); }
     static void clear() { clear(serve()); };
 
@@ -0,0 +1,156 @@
+package lvp;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+// Everything sent since the last CLEAR, so that a browser which connects late or
+// reloads the page gets the current notebook in one go. Frames carry their SSE
+// `id`; a reconnecting EventSource sends `Last-Event-ID` and gets only what it missed.
+// Ids start at 1 for every server, so they go out as `<epoch>-<id>`: a page that
+// outlived its server gets everything again, preceded by a CLEAR.
+//
+// The log is compacted as it goes: CLEAR drops everything but the LOADs and the
+// scripts of view runtimes (SCRIPTs with a key, see `Server.runtime`), and
+// `resetView` drops the calls a view has made before it was reset. A LOAD that
+// no browser acknowledged as loaded is dropped as well, see `dropLoad`. A replay folds
+// consecutive calls into one CALL frame and is kept until the log changes again.
+//
+// A CELL keeps the place and id of its first version and only takes on the content
+// of the latest one, along with its id as `latestID`. Entries stay in the order
+// of their ids, so a replay goes out with ascending ids, and a browser that has
+// seen the first version but not the latest gets the cell again.
+class EventLog {
+    // `key` is the path for LOADs, the view a CALL draws on (if any), the id of a
+    // CELL and the name of a view runtime for its SCRIPT; `latestID` differs from
+    // `id` for updated CELLs only
+    record Entry(long id, SSEType type, String key, String data, long latestID) {}
+
+    interface Encoder { byte[] encode(SSEType sseType, String data, long id); }
+
+    // by a running number, since the calls of a batch share their id
+    private final Map<Long, Entry> entries = new LinkedHashMap<>();
+    private long sequence = 0;
+    // the running numbers of CELLs and LOADs by their key
+    private final Map<String, Long> cells = new HashMap<>();
+    private final Map<String, Long> loads = new HashMap<>();
+    final long epoch = System.currentTimeMillis();
+    private long lastID = 0;
+    private long clearedAt = 0; // id of the last CLEAR
+    private long size = 0;      // characters of all entries
+    private byte[] snapshot;    // full replay for a new page, null if outdated
+    long maxSize = 32 * 1024 * 1024; // 0 keeps nothing
+
+    synchronized long nextID() { return ++lastID; }
+
+    // the SSE id of the event with `id`
+    String eventID(long id) { return epoch + "-" + id; }
+
+    // `eventID` as sent back by a browser: 0 if there is none, -1 if it comes from another server
+    long parseEventID(String eventID) {
+        if (eventID == null || eventID.isEmpty() || eventID.equals("0")) return 0;
+        int dash = eventID.indexOf('-');
+        try {
+            if (dash < 0 || Long.parseLong(eventID.substring(0, dash)) != epoch) return -1;
+            return Long.parseLong(eventID.substring(dash + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    synchronized void append(long id, SSEType type, String key, String data) {
+        if (maxSize == 0) return;
+        if (type == SSEType.LOAD && loads.containsKey(key)) return;
+        size += data.length();
+        snapshot = null;
+        Long cell = type == SSEType.CELL ? cells.get(key) : null;
+        if (cell != null) { // only the latest content counts, at the place the cell was created
+            Entry first = entries.get(cell);
+            size -= first.data().length();
+            entries.put(cell, new Entry(first.id(), type, key, data, id));
+            return;
+        }
+        entries.put(++sequence, new Entry(id, type, key, data, id));
+        if (type == SSEType.CELL) cells.put(key, sequence);
+        else if (type == SSEType.LOAD) loads.put(key, sequence);
+        if (size > maxSize) shrink();
+    }
+
+    synchronized void clear(long id) {
+        clearedAt = id;
+        remove(entry -> !isPinned(entry)); // the libraries and view runtimes stay
+    }
+
+    // a LOAD that failed or timed out in every browser would only fail again in later ones
+    synchronized void dropLoad(String path, long id) {
+        Long load = loads.get(path);
+        if (load != null && entries.get(load).id() == id) forget(entries.remove(load));
+    }
+
+    // the view is reset, whatever it has drawn so far is gone in the browser as well
+    synchronized void resetView(String view) {
+        remove(entry -> entry.type() == SSEType.CALL && view.equals(entry.key()));
+    }
+
+    // drops the oldest events; a late browser will miss the beginning of the notebook
+    private void shrink() {
+        System.err.println("Replay log exceeds " + maxSize + " characters, dropping oldest events");
+        remove(entry -> size > maxSize / 2 && !isPinned(entry));
+    }
+
+    private static boolean isPinned(Entry entry) {
+        return entry.type() == SSEType.LOAD || (entry.type() == SSEType.SCRIPT && entry.key() != null);
+    }
+
+    private void remove(Predicate<Entry> predicate) {
+        entries.values().removeIf(entry -> {
+            if (!predicate.test(entry)) return false;
+            forget(entry);
+            return true;
+        });
+    }
+
+    private void forget(Entry entry) {
+        size -= entry.data().length();
+        snapshot = null;
+        if (entry.type() == SSEType.CELL) cells.remove(entry.key());
+        else if (entry.type() == SSEType.LOAD) loads.remove(entry.key());
+    }
+
+    // all events after `lastEventID` as a single chunk, preceded by a CLEAR
+    // if the browser still shows content from before the last CLEAR or from
+    // another server (`lastEventID` < 0)
+    synchronized byte[] replay(long lastEventID, Encoder encoder) {
+        if (lastEventID < 0) {
+            ByteArrayOutputStream frames = new ByteArrayOutputStream();
+            frames.writeBytes(encoder.encode(SSEType.CLEAR, "", clearedAt));
+            frames.writeBytes(replay(0, encoder));
+            return frames.toByteArray();
+        }
+        if (lastEventID == 0 && snapshot != null) return snapshot;
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        if (lastEventID > 0 && lastEventID < clearedAt) frames.writeBytes(encoder.encode(SSEType.CLEAR, "", clearedAt));
+        List<String> calls = new ArrayList<>();
+        long callsID = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.latestID() <= lastEventID) continue;
+            if (entry.type() == SSEType.CALL) {
+                calls.add(entry.data());
+                callsID = entry.id();
+                continue;
+            }
+            if (!calls.isEmpty()) frames.writeBytes(encoder.encode(SSEType.CALL, Batcher.join(calls), callsID));
+            calls.clear();
+            // a cell seen before in an older version must not set the browser back
+            frames.writeBytes(encoder.encode(entry.type(), entry.data(), Math.max(entry.id(), lastEventID)));
+        }
+        if (!calls.isEmpty()) frames.writeBytes(encoder.encode(SSEType.CALL, Batcher.join(calls), callsID));
+        byte[] replay = frames.toByteArray();
+        if (lastEventID == 0) snapshot = replay;
+        return replay;
+    }
+}
@@ -0,0 +1,57 @@
+package lvp;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// Values of an interactive widget (e.g. a slider) on their way to the delegate.
+// Only the latest value counts: values arriving while the delegate is busy replace
+// each other, so it never works through a backlog of stale values. The delegate
+// runs on its own serial executor, one value at a time, and afterwards every
+// client whose value was handled or replaced gets released.
+class Input {
+    record Pending(String value, Set<String> clients) {}
+
+    private final Consumer<String> delegate;
+    private final Consumer<Set<String>> release;
+    private final Executor executor;
+    private final AtomicReference<Pending> latest = new AtomicReference<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    Input(Consumer<String> delegate, Consumer<Set<String>> release, Executor executor) {
+        this.delegate = delegate;
+        this.release = release;
+        this.executor = executor;
+    }
+
+    void offer(String value, String client) {
+        latest.getAndUpdate(pending -> {
+            Set<String> clients = new HashSet<>();
+            if (pending != null) clients.addAll(pending.clients());
+            clients.add(client);
+            return new Pending(value, clients);
+        });
+        if (running.compareAndSet(false, true)) executor.execute(this::drain);
+    }
+
+    private void drain() {
+        try {
+            Pending pending;
+            while ((pending = latest.getAndSet(null)) != null) {
+                try {
+                    delegate.accept(pending.value());
+                } catch (RuntimeException e) {
+                    System.err.println("Input delegate failed: " + e);
+                }
+                release.accept(pending.clients());
+            }
+        } finally {
+            running.set(false);
+            // a value may have arrived after the loop ended but before `running` was reset
+            if (latest.get() != null && running.compareAndSet(false, true)) executor.execute(this::drain);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package lvp;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import javax.management.ObjectName;
+
+// What a `Server` has been doing: events and bytes sent, slow or dead clients,
+// LOAD round trips and how long the delegates of widgets take. Counters and
+// histograms are lock-free, so recording costs next to nothing on hot paths.
+// Scraped at `/metrics` (Prometheus text format) or via JMX as `lvp:type=Server,port=<port>`.
+class Metrics implements MetricsMXBean {
+    // latencies in nanoseconds, bucketed like an HDR histogram: four buckets per
+    // power of two, so each bucket is at most 25% wide
+    static class Histogram {
+        final AtomicLongArray buckets = new AtomicLongArray(64 * 4);
+        final LongAdder count = new LongAdder();
+        final LongAdder sum = new LongAdder();
+
+        static int index(long nanos) {
+            if (nanos < 4) return (int) Math.max(0, nanos);
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            return exponent * 4 + (int) ((nanos >>> (exponent - 2)) & 3);
+        }
+
+        // smallest value of the next bucket
+        static long upperBound(int index) {
+            if (index < 4) return index + 1;
+            int exponent = index / 4;
+            return (long) (4 + index % 4 + 1) << (exponent - 2);
+        }
+
+        void record(long nanos) {
+            buckets.incrementAndGet(index(nanos));
+            count.increment();
+            sum.add(nanos);
+        }
+
+        long quantile(double q) {
+            long total = 0;
+            for (int i = 0; i < buckets.length(); i++) total += buckets.get(i);
+            long rank = (long) Math.ceil(q * total), seen = 0;
+            for (int i = 0; i < buckets.length() && total > 0; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return upperBound(i);
+            }
+            return 0;
+        }
+
+        // cumulative buckets at powers of two, from about 1 µs to 68 s
+        void write(StringBuilder out, String name, String help) {
+            header(out, name, "histogram", help);
+            long cumulative = 0;
+            int index = 0;
+            for (int exponent = 10; exponent <= 36; exponent++) {
+                for (; index < exponent * 4; index++) cumulative += buckets.get(index);
+                out.append(name).append("_bucket{le=\"").append(seconds(1L << exponent)).append("\"} ").append(cumulative).append('\n');
+            }
+            out.append(name).append("_bucket{le=\"+Inf\"} ").append(count.sum()).append('\n');
+            out.append(name).append("_sum ").append(seconds(sum.sum())).append('\n');
+            out.append(name).append("_count ").append(count.sum()).append('\n');
+        }
+    }
+
+    final LongAdder[] events = new LongAdder[SSEType.values().length];
+    final LongAdder calls = new LongAdder();          // JS calls, several per batched CALL event
+    final LongAdder closedClientBytes = new LongAdder(); // bytes sent to clients that are gone
+    final LongAdder deadConnections = new LongAdder();
+    final LongAdder droppedFrames = new LongAdder();
+    final LongAdder loadFailures = new LongAdder();
+    final Map<String, LongAdder> requests = new ConcurrentHashMap<>(); // by context path
+    final Histogram loadWait = new Histogram();
+    final Histogram delegates = new Histogram();
+
+    final Server server;
+    final ObjectName name;
+
+    Metrics(Server server) {
+        this.server = server;
+        for (int i = 0; i < events.length; i++) events[i] = new LongAdder();
+        ObjectName objectName = null;
+        try {
+            objectName = new ObjectName("lvp:type=Server,port=" + server.port);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (Exception e) {
+            System.err.println("Metrics not available via JMX: " + e.getMessage());
+        }
+        name = objectName;
+    }
+
+    void unregister() {
+        try {
+            if (name != null) ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (Exception e) {
+            // never registered
+        }
+    }
+
+    void event(SSEType sseType) { events[sseType.ordinal()].increment(); }
+
+    void disconnected(SSEClient client) {
+        closedClientBytes.add(client.bytesSent);
+        droppedFrames.add(client.droppedFrames.sum());
+        if (client.dead) deadConnections.increment();
+    }
+
+    // counts the requests to `path` and times its delegate
+    <T> Consumer<T> timed(String path, Consumer<T> delegate) {
+        LongAdder counter = requests.computeIfAbsent(path, p -> new LongAdder());
+        return value -> {
+            counter.increment();
+            long start = System.nanoTime();
+            try {
+                delegate.accept(value);
+            } finally {
+                delegates.record(System.nanoTime() - start);
+            }
+        };
+    }
+
+    static String seconds(long nanos) { return String.valueOf(nanos / 1e9); }
+
+    private static String label(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    String prometheus() {
+        StringBuilder out = new StringBuilder();
+        header(out, "lvp_events_total", "counter", "Events sent to all clients, by type");
+        for (SSEType sseType : SSEType.values())
+            out.append("lvp_events_total{type=\"").append(sseType).append("\"} ").append(events[sseType.ordinal()].sum()).append('\n');
+        header(out, "lvp_calls_total", "counter", "JavaScript calls, several of which may share a CALL event");
+        out.append("lvp_calls_total ").append(calls.sum()).append('\n');
+        header(out, "lvp_clients", "gauge", "Connected browsers");
+        out.append("lvp_clients ").append(server.sseClientConnections.size()).append('\n');
+        header(out, "lvp_bytes_sent_total", "counter", "Bytes written to all clients");
+        out.append("lvp_bytes_sent_total ").append(getBytesSent()).append('\n');
+        header(out, "lvp_client_bytes_sent_total", "counter", "Bytes written to each connected client");
+        for (SSEClient client : server.sseClientConnections)
+            out.append("lvp_client_bytes_sent_total{client=\"").append(label(client.id)).append("\"} ").append(client.bytesSent).append('\n');
+        header(out, "lvp_client_queued_frames", "gauge", "Frames waiting to be written, for each connected client");
+        for (SSEClient client : server.sseClientConnections)
+            out.append("lvp_client_queued_frames{client=\"").append(label(client.id)).append("\"} ").append(client.queue.size()).append('\n');
+        header(out, "lvp_dropped_frames_total", "counter", "Frames dropped because a client fell behind");
+        out.append("lvp_dropped_frames_total ").append(getDroppedFrames()).append('\n');
+        header(out, "lvp_dead_connections_total", "counter", "Connections that failed while writing");
+        out.append("lvp_dead_connections_total ").append(deadConnections.sum()).append('\n');
+        header(out, "lvp_load_failures_total", "counter", "LOADs that timed out or failed in a browser");
+        out.append("lvp_load_failures_total ").append(loadFailures.sum()).append('\n');
+        header(out, "lvp_requests_total", "counter", "Requests handled by widget delegates, by context path");
+        requests.forEach((path, count) -> out.append("lvp_requests_total{path=\"").append(label(path)).append("\"} ").append(count.sum()).append('\n'));
+        loadWait.write(out, "lvp_load_wait_seconds", "Time from sending a LOAD until all clients acknowledged it");
+        delegates.write(out, "lvp_delegate_seconds", "Execution time of widget delegates");
+        return out.toString();
+    }
+
+    @Override public long getEventsSent() { return List.of(events).stream().mapToLong(LongAdder::sum).sum(); }
+    @Override public long getCalls() { return calls.sum(); }
+    @Override public int getClients() { return server.sseClientConnections.size(); }
+
+    @Override
+    public long getBytesSent() {
+        return closedClientBytes.sum() + server.sseClientConnections.stream().mapToLong(client -> client.bytesSent).sum();
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        return droppedFrames.sum() + server.sseClientConnections.stream().mapToLong(client -> client.droppedFrames.sum()).sum();
+    }
+
+    @Override public long getDeadConnections() { return deadConnections.sum(); }
+    @Override public long getLoadFailures() { return loadFailures.sum(); }
+    @Override public double getLoadWaitMillisP50() { return loadWait.quantile(0.5) / 1e6; }
+    @Override public double getLoadWaitMillisP99() { return loadWait.quantile(0.99) / 1e6; }
+    @Override public double getDelegateMillisP50() { return delegates.quantile(0.5) / 1e6; }
+    @Override public double getDelegateMillisP99() { return delegates.quantile(0.99) / 1e6; }
+}
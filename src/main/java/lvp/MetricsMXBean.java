@@ -0,0 +1,16 @@
+package lvp;
+
+// JMX view of a server's `Metrics`, e.g. in JConsole under lvp/Server/<port>
+public interface MetricsMXBean {
+    long getEventsSent();
+    long getCalls();
+    int getClients();
+    long getBytesSent();
+    long getDroppedFrames();
+    long getDeadConnections();
+    long getLoadFailures();
+    double getLoadWaitMillisP50();
+    double getLoadWaitMillisP99();
+    double getDelegateMillisP50();
+    double getDelegateMillisP99();
+}
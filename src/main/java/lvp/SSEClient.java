@@ -0,0 +1,133 @@
+package lvp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// One connected browser tab: events are queued here and written to the
+// socket by a dedicated writer thread, so a slow tab never blocks the caller.
+public class SSEClient {
+    public enum Overflow { BLOCK, DROP_OLDEST, DISCONNECT; }
+
+    public final String id; // chosen by the browser, see script.js
+    final OutputStream out;
+    final Overflow overflow;
+    final BlockingQueue<byte[]> queue;
+    final Consumer<SSEClient> onClose;
+    Thread writer;                        // see `start`
+    volatile boolean closed = false;
+    volatile boolean dead = false;        // a write failed
+    volatile long bytesSent = 0;          // written by the writer thread only
+    final LongAdder droppedFrames = new LongAdder();
+
+    // LOADs sent to this client and not acknowledged yet, by load id
+    final Map<Long, CompletableFuture<Boolean>> pendingLoads = new ConcurrentHashMap<>();
+
+    public SSEClient(String id, OutputStream out, int capacity, Overflow overflow, Consumer<SSEClient> onClose) {
+        this.id = id;
+        this.out = out;
+        this.overflow = overflow;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.onClose = onClose;
+    }
+
+    public SSEClient(OutputStream out, int capacity, Overflow overflow, Consumer<SSEClient> onClose) {
+        this(Clerk.generateID(10), out, capacity, overflow, onClose);
+    }
+
+    public boolean isClosed() { return closed; }
+
+    // Starts the writer; not done by the constructor, which must not hand out
+    // `this` to another thread before a subclass is initialized
+    public synchronized SSEClient start() {
+        if (writer == null && !closed) {
+            writer = Threads.newThread("sse-writer", this::drain);
+            writer.start();
+        }
+        return this;
+    }
+
+    CompletableFuture<Boolean> expectLoad(long loadID, long timeoutMillis) {
+        CompletableFuture<Boolean> loaded = new CompletableFuture<Boolean>()
+            .completeOnTimeout(false, timeoutMillis, TimeUnit.MILLISECONDS);
+        pendingLoads.put(loadID, loaded);
+        loaded.whenComplete((ok, e) -> pendingLoads.remove(loadID));
+        return loaded;
+    }
+
+    void acknowledgeLoad(long loadID, boolean loaded) {
+        CompletableFuture<Boolean> pending = pendingLoads.get(loadID);
+        if (pending != null) pending.complete(loaded);
+    }
+
+    // `frame` is shared between all clients and must not be modified
+    public void send(byte[] frame) {
+        if (closed) return;
+        switch (overflow) {
+            case BLOCK -> {
+                try {
+                    queue.put(frame);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            case DROP_OLDEST -> {
+                while (!queue.offer(frame)) {
+                    if (queue.poll() != null) droppedFrames.increment();
+                }
+            }
+            case DISCONNECT -> {
+                if (!queue.offer(frame)) {
+                    System.err.println("SSE queue overflow, disconnecting client");
+                    close();
+                }
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            while (!closed) {
+                byte[] frame = queue.take();
+                write(frame);
+                // write everything that piled up meanwhile before flushing once
+                while ((frame = queue.poll()) != null) write(frame);
+                out.flush();
+            }
+        } catch (IOException e) {
+            dead = true;
+            System.out.println("Dead Connection!");
+        } catch (InterruptedException e) {
+            // closed
+        } finally {
+            close();
+        }
+    }
+
+    // WebSocket connections wrap each frame into a message, see `WebSocketServer`
+    void write(byte[] frame) throws IOException {
+        out.write(frame);
+        bytesSent += frame.length;
+    }
+
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        queue.clear();
+        if (writer != null) writer.interrupt();
+        pendingLoads.values().forEach(loaded -> loaded.complete(false));
+        try {
+            out.close();
+        } catch (IOException e) {
+            // connection is gone anyway
+        }
+        onClose.accept(this);
+    }
+}
@@ -1,3 +1,3 @@
 package lvp;
 
-public enum SSEType { WRITE, CALL, SCRIPT, LOAD, CLEAR, RELEASE; }
\ No newline at end of file
+public enum SSEType { WRITE, CALL, SCRIPT, LOAD, CLEAR, RELEASE, CELL; }
\ No newline at end of file
@@ -2,22 +2,27 @@ package lvp;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
@@ -28,24 +33,98 @@ public class Server {
     static int defaultPort = 50_001;
     static final String index = "/web/index.html";
     static Map<Integer,Server> serverInstances = new ConcurrentHashMap<>();
-    List<String> paths = new ArrayList<>();
+    List<String> paths = new CopyOnWriteArrayList<>();
+    private final Set<String> runtimes = new HashSet<>(); // see `runtime`
+    final StaticFiles staticFiles = new StaticFiles();
 
     static void setDefaultPort(int port) { defaultPort = port != 0 ? Math.abs(port) : 50_001; }
     static int getDefaultPort() { return defaultPort; }
 
-    public List<HttpExchange> sseClientConnections;
+    public List<SSEClient> sseClientConnections;
 
-    // lock required to temporarily block processing of `SSEType.LOAD`
-    Lock lock = new ReentrantLock();
-    Condition loadEventOccurredCondition = lock.newCondition();
-    boolean loadEventOccured = false;
+    // outbound queue per SSE client and what to do when a client falls behind
+    int queueCapacity = 65_536;
+    SSEClient.Overflow overflow = SSEClient.Overflow.BLOCK;
 
+    public void setOverflowPolicy(int queueCapacity, SSEClient.Overflow overflow) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.overflow = overflow;
+    }
+
+    // consecutive CALL events are coalesced into one frame, see `Batcher`
+    final Batcher batcher = new Batcher(this::broadcastCalls);
+
+    // a window of 0 disables batching outside of explicit `batch()` scopes
+    public void setBatching(long windowMillis, int maxChars) {
+        batcher.windowMillis = windowMillis;
+        batcher.maxChars = maxChars;
+    }
+
+    // try (var batch = server.batch()) { ... } sends all calls of the block at once
+    public class Batch implements AutoCloseable {
+        private boolean closed = false;
+        private Batch() { batcher.open(); }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            batcher.close();
+        }
+    }
+
+    public Batch batch() { return new Batch(); }
+
+    // binary commands are batched per JS object and arrive as `target.run('<base64>')`
+    public void sendCommands(String target, byte[] commands) {
+        if (!batcher.command(target, commands)) call(target, Batcher.run(target, commands));
+    }
+
+    // a CALL that draws on `view`; it is dropped from the replay log on `resetView(view)`
+    public void call(String view, String javascript) {
+        if (batcher.add(view, javascript)) return;
+        synchronized (batcher) {
+            batcher.flush();
+            broadcastCalls(List.of(new Batcher.Part(view, javascript)));
+        }
+    }
+
+    // called right before a view erases its drawing, e.g. `Turtle.reset()`; browsers
+    // connecting later get only what the view draws from now on
+    public void resetView(String view) {
+        synchronized (batcher) {
+            batcher.flush();
+            log.resetView(view);
+        }
+    }
+
+    // `drain` is asked for pending binary commands right before anything else is sent
+    public void defer(String target, Supplier<byte[]> drain) { batcher.defer(target, drain); }
+    public void flush() { batcher.flush(); }
+
+    // every LOAD carries its event id, which each client acknowledges via `/loaded?id=..&client=..`
+    long loadTimeoutMillis = 1_000;
+
+    // events since the last CLEAR, replayed to browsers that connect later
+    final EventLog log = new EventLog();
+
+    // the log drops its oldest events beyond `maxChars`; 0 switches the replay off
+    public void setReplayLimit(long maxChars) { log.maxSize = Math.max(0, maxChars); }
+
+    final Metrics metrics;
+
+
+    // runs the HTTP handlers (slider posts, static files, ...); null means the default
+    // executor: a virtual thread per request where supported, a cached thread pool otherwise
+    final Executor executor;
+    private final boolean ownsExecutor;
 
-    public static Server onPort(int port) {
+    // `executor` only applies if there is no server on `port` yet
+    public static Server onPort(int port, Executor executor) {
         port = Math.abs(port);
         try {
             if (!serverInstances.containsKey(port))
-                serverInstances.put(port, new Server(port));
+                serverInstances.put(port, new Server(port, executor));
             return serverInstances.get(port);
         } catch (IOException e) {
             System.err.printf("Error starting Server: %s\n", e.getMessage());
@@ -54,30 +133,29 @@ public class Server {
         }
     }
 
+    public static Server onPort(int port) { return onPort(port, null); }
     public static Server onPort() { return onPort(defaultPort); }
 
-    private Server(int port) throws IOException {
+    private Server(int port, Executor executor) throws IOException {
         this.port = port;
+        this.ownsExecutor = executor == null;
+        this.executor = executor == null ? Threads.perTaskExecutor() : executor;
         sseClientConnections = new CopyOnWriteArrayList<>(); // thread-safe variant of ArrayList
 
         httpServer = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        metrics = new Metrics(this); // registers with JMX, so only once the port is ours
         System.out.println("Open http://localhost:" + port + " in your browser");
 
-        // loaded-Request to signal successful processing of SSEType.LOAD
+        // loaded-Request to signal successful (or failed) processing of SSEType.LOAD
         httpServer.createContext("/loaded", exchange -> {
             if (!exchange.getRequestMethod().equalsIgnoreCase("post")) {
                 exchange.sendResponseHeaders(405, -1); // Method Not Allowed
                 return;
             }
-            exchange.sendResponseHeaders(200, 0);
+            Map<String, String> query = query(exchange);
+            exchange.sendResponseHeaders(200, -1);
             exchange.close();
-            lock.lock();
-            try { // try/finally pattern for locks
-                loadEventOccured = true;
-                loadEventOccurredCondition.signalAll();
-            } finally {
-                lock.unlock();
-            }
+            acknowledgeLoad(query.get("client"), query.getOrDefault("id", "-1"), !query.containsKey("error"));
         });
 
         // SSE context
@@ -90,65 +168,300 @@ public class Server {
             exchange.getResponseHeaders().add("Cache-Control", "no-cache");
             exchange.getResponseHeaders().add("Connection", "keep-alive");
             exchange.sendResponseHeaders(200, 0);
-            sseClientConnections.add(exchange);
+            String clientID = query(exchange).getOrDefault("client", Clerk.generateID(10));
+            // without the header it is a new page, which gets everything
+            long lastEventID = log.parseEventID(exchange.getRequestHeaders().getFirst("Last-Event-ID"));
+            connect(new SSEClient(clientID, exchange.getResponseBody(), queueCapacity, overflow, this::disconnected),
+                    lastEventID);
+        });
+
+        // port of the WebSocket transport, if enabled
+        httpServer.createContext("/websocket", exchange -> {
+            WebSocketServer webSocket = this.webSocket;
+            if (webSocket == null) {
+                exchange.sendResponseHeaders(404, -1); // Not Found
+            } else {
+                byte[] body = String.valueOf(webSocket.port()).getBytes(StandardCharsets.US_ASCII);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
         });
 
-        // initial html site
+        // counters and latency histograms in Prometheus' text format, see `Metrics`
+        httpServer.createContext("/metrics", exchange -> {
+            byte[] body = metrics.prometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+
+        // the file of the latest `record`, for web/bench.html
+        httpServer.createContext("/recording", exchange -> {
+            Path file = recording;
+            if (file == null || !Files.exists(file)) {
+                exchange.sendResponseHeaders(404, -1); // Not Found
+            } else {
+                byte[] body = Files.readAllBytes(file);
+                exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+
+        // initial html site and all other static files
+        staticFiles.warmUp();
         httpServer.createContext("/", exchange -> {
             if (!exchange.getRequestMethod().equalsIgnoreCase("get")) {
                 exchange.sendResponseHeaders(405, -1); // Method Not Allowed
                 return;
             }
             final String path = exchange.getRequestURI().getPath().equals("/") ? index : exchange.getRequestURI().getPath();
-
-            try (final InputStream stream = Server.class.getResourceAsStream(path)) {
-                final byte[] bytes = stream.readAllBytes();
-                exchange.getResponseHeaders().add("Content-Type", Files.probeContentType(Path.of(path)) + "; charset=utf-8");
-                exchange.sendResponseHeaders(200, bytes.length);
-                exchange.getResponseBody().write(bytes);
-                exchange.getResponseBody().flush();
+            try {
+                staticFiles.serve(exchange, path);
             } finally {
                 exchange.close();
             }
         });
 
-        httpServer.setExecutor(Executors.newFixedThreadPool(5));
+        httpServer.setExecutor(this.executor);
         httpServer.start();
     }
 
+    // replays what the client has missed, then sends it every new event
+    void connect(SSEClient client, long lastEventID) {
+        synchronized (batcher) { // no event may slip in between replay and registration
+            byte[] replay = log.replay(lastEventID, this::encode);
+            if (replay.length > 0) client.send(replay);
+            sseClientConnections.add(client);
+        }
+        client.start();
+    }
+
+    volatile Path recording; // served at `/recording`
+
+    // Writes the session so far and every following event to `file`, as SSE stream;
+    // web/bench.html replays such recordings to measure the browser's side
+    public void record(Path file) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        recording = file;
+        connect(new SSEClient("recorder", out, queueCapacity, SSEClient.Overflow.BLOCK, this::disconnected) {
+            @Override
+            CompletableFuture<Boolean> expectLoad(long loadID, long timeoutMillis) {
+                return CompletableFuture.completedFuture(true); // a file loads nothing
+            }
+        }, 0);
+    }
+
+    void disconnected(SSEClient client) {
+        sseClientConnections.remove(client);
+        metrics.disconnected(client);
+    }
+
+    // Events can also travel via WebSocket, together with LOAD acknowledgements and
+    // widget values in the other direction; browsers use it if it is enabled.
+    volatile WebSocketServer webSocket;
+
+    public synchronized void enableWebSocket() {
+        if (webSocket != null) return;
+        try {
+            webSocket = new WebSocketServer(this);
+        } catch (IOException e) {
+            System.err.println("WebSocket transport not available: " + e.getMessage());
+        }
+    }
+
+    private void acknowledgeLoad(String clientID, String loadID, boolean loaded) {
+        try {
+            long id = Long.parseLong(loadID);
+            sseClientConnections.stream()
+                                .filter(client -> client.id.equals(clientID))
+                                .forEach(client -> client.acknowledgeLoad(id, loaded));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid LOAD acknowledgement: " + loadID);
+        }
+    }
+
+    // a message of a WebSocket client, see `WebSocketServer`
+    void receive(String clientID, String message) {
+        if (message.startsWith("loaded ")) { // `loaded <id>[ error]`
+            String[] parts = message.split(" ");
+            if (parts.length == 2 || (parts.length == 3 && parts[2].equals("error")))
+                acknowledgeLoad(clientID, parts[1], parts.length == 2);
+            else
+                System.err.println("Invalid LOAD acknowledgement: " + message);
+        } else if (message.startsWith("input ")) {
+            int newline = message.indexOf('\n');
+            String path = newline < 0 ? message.substring(6) : message.substring(6, newline);
+            Input input = inputs.get(path.startsWith("/") ? path : "/" + path);
+            if (input != null) input.offer(newline < 0 ? "" : message.substring(newline + 1), clientID);
+        } else {
+            System.err.println("Unknown WebSocket message: " + message);
+        }
+    }
+
+    // RAW sends UTF-8 text with the SSE `event:` field and one `data:` line per
+    // line of text; BASE64 is the former `data: TYPE:base64` format
+    public enum Framing { RAW, BASE64; }
+    Framing framing = Framing.RAW;
+
+    public void setFraming(Framing framing) { this.framing = framing; }
+
+    // an event is encoded once; all clients share the resulting bytes
+    // `id` becomes the SSE event id unless it is 0
+    byte[] encode(SSEType sseType, String data, long id) {
+        String idLine = id > 0 ? "id: " + log.eventID(id) + "\n" : "";
+        if (framing == Framing.BASE64) {
+            String base64Data = Base64.getEncoder().encodeToString(data.getBytes(StandardCharsets.UTF_8));
+            return (idLine + "data: " + sseType + ":" + base64Data + "\n\n").getBytes(StandardCharsets.US_ASCII);
+        }
+        StringBuilder message = new StringBuilder(data.length() + 32);
+        message.append(idLine).append("event: ").append(sseType).append("\ndata: ");
+        for (int i = 0; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (c == '\r' || c == '\n') { // CR, LF and CRLF all end a line in SSE
+                if (c == '\r' && i + 1 < data.length() && data.charAt(i + 1) == '\n') i++;
+                message.append("\ndata: ");
+            } else {
+                message.append(c);
+            }
+        }
+        return message.append("\n\n").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
     public void sendServerEvent(SSEType sseType, String data) {
-        List<HttpExchange> deadConnections = new ArrayList<>();
-        for (HttpExchange connection : sseClientConnections) {
-            if (sseType == SSEType.LOAD) {
-                lock.lock();
-                loadEventOccured = false; // NEU
+        if (sseType == SSEType.CALL) {
+            call(null, data);
+            return;
+        }
+        if (sseType == SSEType.LOAD) {
+            loadAsync(data).join();
+            return;
+        }
+        synchronized (batcher) { // pending calls have to go out first
+            batcher.flush();
+            broadcast(sseType, data);
+        }
+    }
+
+    // Output that can be changed later: a CELL `<cell id>:<html>` creates the cell
+    // at the end of the page the first time and patches its content afterwards
+    public void writeCell(String cellId, String html) {
+        if (cellId.contains(":")) throw new IllegalArgumentException("A cell id must not contain ':', got " + cellId);
+        sendServerEvent(SSEType.CELL, cellId + ":" + html);
+    }
+
+    // RELEASE only concerns the clients connected right now and is not logged
+    private void broadcast(SSEType sseType, String data) {
+        broadcast(sseType, sseType == SSEType.CELL ? data.substring(0, data.indexOf(':')) : null, data);
+    }
+
+    private void broadcast(SSEType sseType, String key, String data) {
+        final long id = sseType == SSEType.RELEASE ? 0 : log.nextID();
+        final byte[] frame = encode(sseType, data, id);
+        metrics.event(sseType);
+        if (sseType == SSEType.CLEAR) log.clear(id);
+        else if (id > 0) log.append(id, sseType, key, data);
+        for (SSEClient connection : sseClientConnections) connection.send(frame);
+    }
+
+    // a batch goes out as one frame but is logged call by call, so views can be reset
+    private void broadcastCalls(List<Batcher.Part> parts) {
+        final long id = log.nextID();
+        final byte[] frame = encode(SSEType.CALL, Batcher.join(parts.stream().map(Batcher.Part::javascript).toList()), id);
+        for (Batcher.Part part : parts) log.append(id, SSEType.CALL, part.view(), part.javascript());
+        metrics.event(SSEType.CALL);
+        metrics.calls.add(parts.size());
+        for (SSEClient connection : sseClientConnections) connection.send(frame);
+    }
+
+    // Sends a LOAD to all clients without waiting; the future completes with
+    // `true` once every client has acknowledged the load within the timeout.
+    // Without any clients the LOAD just goes into the replay log; if no client
+    // has loaded it, it leaves the log again.
+    CompletableFuture<Boolean> loadAsync(String path) {
+        List<CompletableFuture<Boolean>> acknowledgements = new ArrayList<>();
+        final long start = System.nanoTime();
+        final long id;
+        synchronized (batcher) {
+            batcher.flush();
+            id = log.nextID();
+            final String data = id + ":" + path;
+            final byte[] frame = encode(SSEType.LOAD, data, id);
+            log.append(id, SSEType.LOAD, path, data);
+            metrics.event(SSEType.LOAD);
+            for (SSEClient connection : sseClientConnections) {
+                acknowledgements.add(connection.expectLoad(id, loadTimeoutMillis));
+                connection.send(frame);
             }
-            try {
-                byte[] binaryData = data.getBytes(StandardCharsets.UTF_8);
-                String base64Data = Base64.getEncoder().encodeToString(binaryData);
-                String message = "data: " + sseType + ":" + base64Data + "\n\n";
-                connection.getResponseBody().flush();
-                connection.getResponseBody()
-                          .write(message.getBytes());
-                connection.getResponseBody().flush();
-                if (sseType == SSEType.LOAD) {
-                    loadEventOccurredCondition.await(1_000, TimeUnit.MILLISECONDS);
-                    if (loadEventOccured) paths.add(data);
-                    else System.err.println("LOAD-Timeout: " + data);
-                }
-            } catch (IOException e) {
-                deadConnections.add(connection);
-                System.out.println("Dead Connection!");
-            } catch (InterruptedException e) {
-                System.err.println("LOAD-Interruption: " + data + ", " + e);
-            } finally {
-                if (sseType == SSEType.LOAD) {
-                    // loadEventOccured = false; // REMOVED
-                    lock.unlock();
-                }
+        }
+        return CompletableFuture.allOf(acknowledgements.toArray(CompletableFuture[]::new))
+                                .thenApply(v -> acknowledgements.stream().allMatch(CompletableFuture::join))
+                                .whenComplete((loaded, e) -> {
+                                    metrics.loadWait.record(System.nanoTime() - start);
+                                    if (Boolean.TRUE.equals(loaded)) {
+                                        paths.add(path);
+                                    } else {
+                                        metrics.loadFailures.increment();
+                                        System.err.println("LOAD-Timeout or failure: " + path);
+                                        if (!acknowledgements.isEmpty() && acknowledgements.stream().noneMatch(CompletableFuture::join))
+                                            log.dropLoad(path, id);
+                                    }
+                                });
+    }
+
+    // Sets up what all views of a kind share in the browser, e.g. a parser, once
+    // per server: loads the assets and runs `javascript`. The script stays in the
+    // replay log across CLEARs like the LOADs do, since the browser keeps it as well.
+    public void runtime(String name, List<Asset> assets, String javascript) {
+        synchronized (runtimes) {
+            if (runtimes.contains(name)) return;
+            load(assets);
+            synchronized (batcher) {
+                batcher.flush();
+                broadcast(SSEType.SCRIPT, name, javascript);
             }
+            runtimes.add(name);
+        }
+    }
+
+    // Loads all assets and their dependencies; independent assets are sent at
+    // once, an asset with dependencies only after all of them have been loaded.
+    public boolean load(List<Asset> assets) {
+        Map<Asset, CompletableFuture<Boolean>> loads = new HashMap<>();
+        List<CompletableFuture<Boolean>> loaded = assets.stream().map(asset -> load(asset, loads)).toList();
+        return loaded.stream().allMatch(CompletableFuture::join);
+    }
+
+    private CompletableFuture<Boolean> load(Asset asset, Map<Asset, CompletableFuture<Boolean>> loads) {
+        if (loads.containsKey(asset)) return loads.get(asset);
+        CompletableFuture<Boolean> loaded;
+        if (paths.contains(asset.path())) {
+            loaded = CompletableFuture.completedFuture(true);
+        } else {
+            List<CompletableFuture<Boolean>> dependencies = asset.dependsOn().stream().map(dependency -> load(dependency, loads)).toList();
+            loaded = CompletableFuture.allOf(dependencies.toArray(CompletableFuture[]::new))
+                                      .thenCompose(v -> dependencies.stream().allMatch(CompletableFuture::join)
+                                                        ? loadAsync(asset.path())
+                                                        : CompletableFuture.completedFuture(false));
+        }
+        loads.put(asset, loaded);
+        return loaded;
+    }
+
+    static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return parameters;
+        for (String parameter : query.split("&")) {
+            int splitPos = parameter.indexOf('=');
+            String key = splitPos < 0 ? parameter : parameter.substring(0, splitPos);
+            String value = splitPos < 0 ? "" : parameter.substring(splitPos + 1);
+            parameters.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
         }
-        sseClientConnections.removeAll(deadConnections); // TODO: need to be closed
+        return parameters;
     }
 
     public void createResponseContext(String path, Consumer<String> delegate) {
@@ -156,38 +469,106 @@ public class Server {
     }
 
     public void createResponseContext(String path, Consumer<String> delegate, String id) {
+        createContext(path, body -> delegate.accept(new String(body, StandardCharsets.UTF_8)), id);
+    }
+
+    // for widgets that send numbers or other binary data: the body is handed over
+    // as is, without decoding it into a String first
+    public void createBinaryResponseContext(String path, Consumer<ByteBuffer> delegate) {
+        createBinaryResponseContext(path, delegate, "-1");
+    }
+
+    public void createBinaryResponseContext(String path, Consumer<ByteBuffer> delegate, String id) {
+        createContext(path, body -> delegate.accept(ByteBuffer.wrap(body)), id);
+    }
+
+    private void createContext(String path, Consumer<byte[]> untimedDelegate, String id) {
+        Consumer<byte[]> delegate = metrics.timed(path, untimedDelegate);
         httpServer.createContext(path, exchange -> {
             if (!exchange.getRequestMethod().equalsIgnoreCase("post")) {
                 exchange.sendResponseHeaders(405, -1); // Method Not Allowed
                 return;
             }
+            byte[] body = readBody(exchange);
+            if (body == null) return;
+            delegate.accept(body);
+            sendServerEvent(SSEType.RELEASE, id);
+            exchange.sendResponseHeaders(200, 0);
+            exchange.close();
+        });
+    }
 
-            String content_length = exchange.getRequestHeaders().getFirst("Content-length");
-            if (content_length == null) {
-                exchange.sendResponseHeaders(400, -1);
-                return;
+    // larger request bodies are rejected with 413
+    int maxRequestBody = 1024 * 1024;
+
+    public void setMaxRequestBody(int bytes) { maxRequestBody = Math.max(0, bytes); }
+
+    // Reads the whole body, with or without Content-length (e.g. chunked). Returns
+    // null after answering the request if the body is too large or incomplete.
+    byte[] readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            String contentLength = exchange.getRequestHeaders().getFirst("Content-length");
+            long length = contentLength == null ? -1 : Long.parseLong(contentLength.trim());
+            if (length > maxRequestBody) {
+                exchange.sendResponseHeaders(413, -1); // Content Too Large
+                exchange.close();
+                return null;
             }
+            byte[] body = length >= 0 ? in.readNBytes((int) length) : in.readNBytes(maxRequestBody + 1);
+            if (body.length > maxRequestBody || (length >= 0 && body.length < length)) {
+                exchange.sendResponseHeaders(body.length > maxRequestBody ? 413 : 400, -1);
+                exchange.close();
+                return null;
+            }
+            return body;
+        } catch (NumberFormatException e) {
+            exchange.sendResponseHeaders(400, -1); // Bad Request
+            exchange.close();
+            return null;
+        }
+    }
 
-            try {
-                int length = Integer.parseInt(content_length);
-                byte[] data = new byte[length];
-                exchange.getRequestBody().read(data);
-                delegate.accept(new String(data));
-                sendServerEvent(SSEType.RELEASE, id);
-            } catch (NumberFormatException e) {
-                exchange.sendResponseHeaders(400, -1);
+    final Map<String, Input> inputs = new ConcurrentHashMap<>();
+
+    // Like `createResponseContext`, but for widgets that send values faster than the
+    // delegate can handle them, see `Input`. The browser posts to `path?client=..`
+    // and waits for the RELEASE of `id` before it sends its next value.
+    public void createInputContext(String path, Consumer<String> delegate, String id) {
+        Input input = new Input(metrics.timed(path, delegate), clients -> release(clients, id), executor);
+        inputs.put(path, input);
+        httpServer.createContext(path, exchange -> {
+            if (!exchange.getRequestMethod().equalsIgnoreCase("post")) {
+                exchange.sendResponseHeaders(405, -1); // Method Not Allowed
                 return;
             }
-
-            exchange.sendResponseHeaders(200, 0);
+            byte[] body = readBody(exchange);
+            if (body == null) return;
+            input.offer(new String(body, StandardCharsets.UTF_8), query(exchange).getOrDefault("client", ""));
+            exchange.sendResponseHeaders(202, -1); // Accepted
             exchange.close();
         });
     }
 
+    // the delegate's output goes out first, then only the waiting clients are released
+    private void release(Set<String> clients, String id) {
+        synchronized (batcher) {
+            batcher.flush();
+            final byte[] frame = encode(SSEType.RELEASE, id, 0);
+            metrics.event(SSEType.RELEASE);
+            for (SSEClient connection : sseClientConnections)
+                if (clients.contains(connection.id)) connection.send(frame);
+        }
+    }
+
     public void stop() {
+        batcher.shutdown();
+        if (webSocket != null) webSocket.stop();
+        sseClientConnections.forEach(SSEClient::close);
         sseClientConnections.clear();
         serverInstances.remove(port);
         httpServer.stop(0);
+        metrics.unregister();
+        if (ownsExecutor) ((ExecutorService) executor).shutdownNow();
     }
 
     public static void shutdown() {
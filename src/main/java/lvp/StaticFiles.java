@@ -0,0 +1,188 @@
+package lvp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+
+// Files served at "/" (index.html, script.js, the view libraries, ...). Each file
+// is read from the classpath once, compressed once and then served from memory
+// with an ETag, so reloads are answered with 304 or precompressed bytes.
+class StaticFiles {
+    static final String[] roots = { "web", "views" }; // resource folders, see pom.xml
+
+    record Entry(String contentType, String cacheControl, String etag, byte[] identity, byte[] gzip, byte[] deflate) {}
+
+    final Map<String, Entry> files = new ConcurrentHashMap<>();
+
+    // paths without a resource are remembered as well, up to `maxMissing` of them
+    private static final Entry MISSING = new Entry(null, null, null, null, null, null);
+    private final AtomicInteger missing = new AtomicInteger();
+    static final int maxMissing = 10_000;
+
+    // reads all files below `roots` in advance, whether the classes live in a folder or a jar
+    void warmUp() {
+        try {
+            URI location = Server.class.getProtectionDomain().getCodeSource().getLocation().toURI();
+            Path base = Path.of(location);
+            if (Files.isDirectory(base)) {
+                warmUp(base);
+            } else {
+                try (FileSystem jar = FileSystems.newFileSystem(base)) {
+                    warmUp(jar.getPath("/"));
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Static files are loaded on demand: " + e);
+        }
+    }
+
+    private void warmUp(Path base) throws IOException {
+        for (String root : roots) {
+            Path folder = base.resolve(root);
+            if (!Files.isDirectory(folder)) continue;
+            try (Stream<Path> paths = Files.walk(folder)) {
+                paths.filter(Files::isRegularFile)
+                     .forEach(path -> get("/" + base.relativize(path).toString().replace('\\', '/')));
+            }
+        }
+    }
+
+    // returns null if there is no such resource
+    Entry get(String path) {
+        if (path.contains("..")) return null;
+        Entry file = files.computeIfAbsent(path, p -> {
+            Entry read = read(p);
+            return read != null ? read : missing.incrementAndGet() <= maxMissing ? MISSING : null;
+        });
+        return file == MISSING ? null : file;
+    }
+
+    private static Entry read(String path) {
+        String contentType = contentType(path);
+        try (InputStream stream = Server.class.getResourceAsStream(path)) {
+            if (stream == null) return null;
+            byte[] bytes = stream.readAllBytes();
+            boolean compress = !contentType.startsWith("image/") && bytes.length > 1024;
+            // the URLs carry no version, so every file is revalidated against its ETag
+            return new Entry(contentType, "no-cache", etag(bytes), bytes,
+                            compress ? compress(bytes, true) : null,
+                            compress ? compress(bytes, false) : null);
+        } catch (IOException e) {
+            System.err.println("Error reading " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // the common types directly, any other as the platform knows it
+    static String contentType(String path) {
+        String extension = path.substring(path.lastIndexOf('.') + 1).toLowerCase();
+        return switch (extension) {
+            case "html" -> "text/html; charset=utf-8";
+            case "js"   -> "text/javascript; charset=utf-8";
+            case "css"  -> "text/css; charset=utf-8";
+            case "md"   -> "text/markdown; charset=utf-8";
+            case "json" -> "application/json; charset=utf-8";
+            case "svg"  -> "image/svg+xml";
+            case "ico"  -> "image/x-icon";
+            case "png"  -> "image/png";
+            case "gif"  -> "image/gif";
+            default     -> probeContentType(path);
+        };
+    }
+
+    private static String probeContentType(String path) {
+        try {
+            String contentType = Files.probeContentType(Path.of(path));
+            if (contentType == null) return "application/octet-stream";
+            return contentType.startsWith("text/") ? contentType + "; charset=utf-8" : contentType;
+        } catch (IOException | RuntimeException e) {
+            return "application/octet-stream";
+        }
+    }
+
+    private static String etag(byte[] bytes) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] compress(byte[] bytes, boolean gzip) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 3);
+        try (OutputStream out = gzip ? new GZIPOutputStream(compressed) : new DeflaterOutputStream(compressed)) {
+            out.write(bytes);
+        }
+        return compressed.size() < bytes.length ? compressed.toByteArray() : null;
+    }
+
+    static boolean accepts(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) return false;
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.trim().split(";");
+            if (!parts[0].trim().equalsIgnoreCase(encoding)) continue;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                try {
+                    if (parameter.startsWith("q=") && Double.parseDouble(parameter.substring(2)) == 0) return false;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    void serve(HttpExchange exchange, String path) throws IOException {
+        Entry file = get(path);
+        if (file == null) {
+            exchange.sendResponseHeaders(404, -1); // Not Found
+            return;
+        }
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-encoding");
+        String encoding = null;
+        byte[] bytes = file.identity();
+        if (file.gzip() != null && accepts(acceptEncoding, "gzip")) {
+            encoding = "gzip";
+            bytes = file.gzip();
+        } else if (file.deflate() != null && accepts(acceptEncoding, "deflate")) {
+            encoding = "deflate";
+            bytes = file.deflate();
+        }
+        // a strong ETag identifies the bytes, so each encoding gets its own
+        String etag = "\"" + file.etag() + (encoding == null ? "" : "-" + encoding) + "\"";
+
+        exchange.getResponseHeaders().add("Content-Type", file.contentType());
+        exchange.getResponseHeaders().add("Cache-Control", file.cacheControl());
+        exchange.getResponseHeaders().add("ETag", etag);
+        exchange.getResponseHeaders().add("Vary", "Accept-Encoding");
+        if (encoding != null) exchange.getResponseHeaders().add("Content-Encoding", encoding);
+
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-none-match");
+        if (ifNoneMatch != null && (ifNoneMatch.trim().equals("*") || ifNoneMatch.contains(etag))) {
+            exchange.sendResponseHeaders(304, -1); // Not Modified
+            return;
+        }
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
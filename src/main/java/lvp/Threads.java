@@ -0,0 +1,56 @@
+package lvp;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// Virtual threads are final in Java 21 but only a preview in Java 19, the
+// release this project compiles against. They are looked up reflectively, so
+// the same jar can use them; it does so only from Java 24 on, where a virtual
+// thread blocked in `synchronized` no longer pins its carrier (see `factory`),
+// and uses platform threads before that.
+class Threads {
+    private Threads() {}
+
+    static final ThreadFactory daemons = runnable -> {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        return thread;
+    };
+
+    // For the SSE writers and the batch timer. Writers block in the HttpServer's
+    // synchronized output stream or in `synchronized (out)` of a WebSocket, which
+    // pins a virtual thread to its carrier before Java 24: a few stalled tabs would
+    // occupy all carriers and stop every other writer. Daemon threads there.
+    static final ThreadFactory factory = createFactory();
+
+    private static ThreadFactory createFactory() {
+        if (Runtime.version().feature() >= 24) try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // fall through
+        }
+        return daemons;
+    }
+
+    // A new thread per task, so a slow task never waits for a free thread. Before
+    // Java 24 a virtual thread blocked on a `synchronized` monitor pins its carrier;
+    // request handlers contend on the batcher's monitor, which made them several
+    // times slower under load (examples/ServerLoadTest.java). They get a cached
+    // pool of platform threads there.
+    static ExecutorService perTaskExecutor() {
+        if (Runtime.version().feature() >= 24) try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // fall through
+        }
+        return Executors.newCachedThreadPool(daemons);
+    }
+
+    static Thread newThread(String name, Runnable runnable) {
+        Thread thread = factory.newThread(runnable);
+        thread.setName(name);
+        return thread;
+    }
+}
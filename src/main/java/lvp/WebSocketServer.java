@@ -0,0 +1,246 @@
+package lvp;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+// A minimal WebSocket server (RFC 6455) as an alternative to SSE plus one POST
+// context per widget: a single socket carries the server's events down and the
+// LOAD acknowledgements and widget values up. `HttpServer` cannot hand over its
+// socket after a 101 response, so the WebSocket listens on a port of its own,
+// which script.js asks for at `/websocket`.
+//
+// Downstream messages contain the very same SSE frames the `/events` clients
+// get; upstream messages are `loaded <id>[ error]` and `input <path>\n<value>`.
+class WebSocketServer {
+    static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11"; // RFC 6455, section 1.3
+    static final int maxMessage = 1024 * 1024;
+
+    final Server server;
+    final ServerSocket serverSocket;
+    volatile boolean stopped = false;
+
+    WebSocketServer(Server server) throws IOException {
+        this.server = server;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Threads.daemons.newThread(this::accept).start();
+    }
+
+    int port() { return serverSocket.getLocalPort(); }
+
+    private void accept() {
+        while (!stopped) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                // a platform thread: the reader may wait for the batcher's monitor
+                Threads.daemons.newThread(() -> connect(socket)).start();
+            } catch (IOException e) {
+                if (!stopped) System.err.println("WebSocket accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    void stop() {
+        stopped = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // closed anyway
+        }
+    }
+
+    private void connect(Socket socket) {
+        try (socket) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            String[] requestLine = new String[1];
+            Map<String, String> headers = readHeaders(in, requestLine);
+            Map<String, String> query = query(requestLine[0]);
+            String key = headers.get("sec-websocket-key");
+            if (query == null || key == null || !"websocket".equalsIgnoreCase(headers.get("upgrade")) || !allowedOrigin(headers.get("origin"))) {
+                out.write("HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                return;
+            }
+            out.write(("HTTP/1.1 101 Switching Protocols\r\n" +
+                       "Upgrade: websocket\r\n" +
+                       "Connection: Upgrade\r\n" +
+                       "Sec-WebSocket-Accept: " + accept(key) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            long lastEventID = server.log.parseEventID(query.get("lastEventID"));
+            Client client = new Client(query.getOrDefault("client", Clerk.generateID(10)), out);
+            server.connect(client, lastEventID);
+            try {
+                read(in, client);
+            } finally {
+                client.close();
+            }
+        } catch (IOException e) {
+            // connection is gone
+        } catch (RuntimeException e) {
+            System.err.println("WebSocket connection failed: " + e);
+        }
+    }
+
+    // other websites must not drive the notebook through the browser
+    private boolean allowedOrigin(String origin) {
+        return origin == null ||
+               origin.equals("http://localhost:" + server.port) ||
+               origin.equals("http://127.0.0.1:" + server.port);
+    }
+
+    private static Map<String, String> readHeaders(InputStream in, String[] requestLine) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int last4 = 0;
+        while (last4 != 0x0D0A0D0A) { // CR LF CR LF
+            int b = in.read();
+            if (b < 0) throw new EOFException();
+            if (head.size() > 16 * 1024) throw new IOException("Request header too large");
+            head.write(b);
+            last4 = last4 << 8 | b;
+        }
+        String[] lines = head.toString(StandardCharsets.ISO_8859_1).split("\r\n");
+        requestLine[0] = lines[0];
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) headers.put(lines[i].substring(0, colon).trim().toLowerCase(), lines[i].substring(colon + 1).trim());
+        }
+        return headers;
+    }
+
+    // null if the request target is malformed
+    private static Map<String, String> query(String requestLine) {
+        Map<String, String> parameters = new HashMap<>();
+        String[] parts = requestLine.split(" ");
+        if (parts.length < 2) return parameters;
+        try {
+            String query = new URI(parts[1]).getRawQuery();
+            if (query == null) return parameters;
+            for (String parameter : query.split("&")) {
+                int splitPos = parameter.indexOf('=');
+                if (splitPos > 0) parameters.put(URLDecoder.decode(parameter.substring(0, splitPos), StandardCharsets.UTF_8),
+                                                 URLDecoder.decode(parameter.substring(splitPos + 1), StandardCharsets.UTF_8));
+            }
+            return parameters;
+        } catch (URISyntaxException | IllegalArgumentException e) { // also a broken %-escape
+            System.err.println("Invalid WebSocket request: " + requestLine);
+            return null;
+        }
+    }
+
+    static String accept(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest((key + GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // reads messages until the browser closes the connection
+    private void read(DataInputStream in, Client client) throws IOException {
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        while (!client.isClosed()) {
+            int b0 = in.read();
+            if (b0 < 0) return;
+            boolean fin = (b0 & 0x80) != 0;
+            int opcode = b0 & 0x0F;
+            int b1 = in.readUnsignedByte();
+            long length = b1 & 0x7F;
+            if (length == 126) length = in.readUnsignedShort();
+            else if (length == 127) length = in.readLong();
+            if ((b1 & 0x80) == 0) { // browsers must mask their frames
+                client.control(0x8, new byte[]{ 0x03, (byte) 0xEA }); // 1002: protocol error
+                return;
+            }
+            if (length < 0 || message.size() + length > maxMessage) {
+                client.control(0x8, new byte[]{ 0x03, (byte) 0xF1 }); // 1009: message too big
+                return;
+            }
+            byte[] mask = new byte[4];
+            in.readFully(mask);
+            byte[] payload = new byte[(int) length];
+            in.readFully(payload);
+            for (int i = 0; i < payload.length; i++) payload[i] ^= mask[i & 3];
+
+            switch (opcode) {
+                case 0x0, 0x1, 0x2 -> { // continuation, text, binary
+                    message.writeBytes(payload);
+                    if (fin) {
+                        String text = message.toString(StandardCharsets.UTF_8);
+                        message.reset();
+                        try {
+                            server.receive(client.id, text);
+                        } catch (RuntimeException e) { // the connection outlives a bad message
+                            System.err.println("Invalid WebSocket message: " + text);
+                            e.printStackTrace();
+                        }
+                    }
+                }
+                case 0x8 -> { // close: echo and hang up
+                    client.control(0x8, payload.length >= 2 ? new byte[]{ payload[0], payload[1] } : new byte[0]);
+                    return;
+                }
+                case 0x9 -> client.control(0xA, payload); // ping
+                default -> {} // pong
+            }
+        }
+    }
+
+    // a browser connected via WebSocket; each queued SSE frame becomes a text message
+    class Client extends SSEClient {
+        Client(String id, OutputStream out) {
+            super(id, out, server.queueCapacity, server.overflow, server::disconnected);
+        }
+
+        @Override
+        void write(byte[] frame) throws IOException {
+            synchronized (out) { // control frames are sent by the reader thread
+                writeHeader(0x1, frame.length);
+                super.write(frame);
+            }
+        }
+
+        void control(int opcode, byte[] payload) throws IOException {
+            synchronized (out) {
+                writeHeader(opcode, payload.length);
+                out.write(payload);
+                out.flush();
+            }
+        }
+
+        // server frames are never masked
+        private void writeHeader(int opcode, int length) throws IOException {
+            out.write(0x80 | opcode); // FIN
+            if (length < 126) {
+                out.write(length);
+            } else if (length < 65_536) {
+                out.write(126);
+                out.write(length >>> 8);
+                out.write(length);
+            } else {
+                out.write(127);
+                for (int shift = 56; shift >= 0; shift -= 8) out.write((int) ((long) length >>> shift));
+            }
+        }
+    }
+}
@@ -0,0 +1,615 @@
+package lvp.skills;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Markdown to HTML in Java, so that the browser gets final HTML instead of
+// parsing the markdown itself. Covers what notebooks use: headings, paragraphs,
+// lists, block quotes, fenced code, tables, rules, raw HTML, emphasis, code
+// spans, links, images, autolinks and TeX math in `$..$` and `$$..$$`.
+//
+// Code blocks come out as `<pre><code class="language-..">` and math as
+// `<span class="math">\(..\)</span>` or `<div class="math">\[..\]</div>`;
+// highlighting and typesetting are left to highlight.js and MathJax.
+public class Markdown {
+    private Markdown(){}
+
+    // rendered HTML by markdown text; a notebook run again renders nothing twice
+    private static final int CACHE_SIZE = 1024;
+    private static final Map<String, String> cache = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) { return size() > CACHE_SIZE; }
+    };
+
+    public static String toHtml(String markdown) {
+        synchronized (cache) {
+            String html = cache.get(markdown);
+            if (html != null) return html;
+        }
+        String html = render(markdown);
+        synchronized (cache) { cache.put(markdown, html); }
+        return html;
+    }
+
+    // without the cache
+    public static String render(String markdown) {
+        StringBuilder html = new StringBuilder(markdown.length() + markdown.length() / 4);
+        blocks(List.of(markdown.replace("\r\n", "\n").split("\n", -1)), false, html);
+        return html.toString();
+    }
+
+    // The top-level blocks of a text, each of which renders on its own: blank
+    // lines separate blocks unless they are inside fenced code or `$$` math, or
+    // the next line is indented or continues a list
+    public static List<String> split(String markdown) {
+        List<String> blocks = new ArrayList<>();
+        StringBuilder block = new StringBuilder();
+        String fence = null;    // the open code fence or `$$`, if any
+        int blankLines = 0;
+        boolean list = false;   // whether the current block is a list
+        for (String line : markdown.replace("\r\n", "\n").split("\n", -1)) {
+            if (fence == null && line.isBlank()) {
+                if (block.length() > 0) blankLines++;
+                continue;
+            }
+            if (fence == null && blankLines > 0) {
+                boolean continues = line.startsWith(" ") || line.startsWith("\t") || (list && ITEM.matcher(line).matches());
+                if (continues) block.append("\n".repeat(blankLines));
+                else {
+                    blocks.add(block.toString());
+                    block.setLength(0);
+                }
+                blankLines = 0;
+            }
+            if (block.length() == 0) list = ITEM.matcher(line).matches();
+            block.append(line).append('\n');
+            Matcher m = FENCE.matcher(line);
+            if (fence == null && m.matches()) fence = m.group(1);
+            else if (fence == null && line.strip().startsWith("$$") && !(line.strip().length() > 2 && line.strip().endsWith("$$"))) fence = "$$";
+            else if (fence != null && (fence.equals("$$") ? line.strip().endsWith("$$") : isClosingFence(line, fence))) fence = null;
+        }
+        if (block.length() > 0) blocks.add(block.toString());
+        return blocks;
+    }
+
+    private static final Pattern FENCE = Pattern.compile("^ {0,3}(`{3,}|~{3,})\\s*([^`\\s]*).*$");
+    private static final Pattern HEADING = Pattern.compile("^ {0,3}(#{1,6})(?:\\s+(.*?))?(?:\\s+#+)?\\s*$");
+    private static final Pattern RULE = Pattern.compile("^ {0,3}([-*_])(?:\\s*\\1){2,}\\s*$");
+    private static final Pattern QUOTE = Pattern.compile("^ {0,3}> ?(.*)$");
+    private static final Pattern ITEM = Pattern.compile("^( {0,3})([-*+]|\\d{1,9}[.)])([ \t]+|$)(.*)$");
+    private static final Pattern HTML = Pattern.compile("^ {0,3}<(?:[a-zA-Z][a-zA-Z0-9-]*(?:[\\s/>]|$)|/[a-zA-Z]|!--)");
+    private static final Pattern TABLE_DELIMITER = Pattern.compile("^\\s*\\|?\\s*:?-+:?\\s*(?:\\|\\s*:?-+:?\\s*)*\\|?\\s*$");
+    private static final Pattern SETEXT = Pattern.compile("^ {0,3}(=+|-+)\\s*$");
+
+    // `tight`: paragraphs of a list without blank lines between its items get no <p>
+    private static void blocks(List<String> lines, boolean tight, StringBuilder html) {
+        int i = 0;
+        while (i < lines.size()) {
+            String line = lines.get(i);
+            Matcher m;
+            if (line.isBlank()) {
+                i++;
+            } else if ((m = FENCE.matcher(line)).matches()) {
+                String fence = m.group(1);
+                String language = m.group(2);
+                int indent = line.indexOf(fence.charAt(0));
+                StringBuilder code = new StringBuilder();
+                for (i++; i < lines.size() && !isClosingFence(lines.get(i), fence); i++)
+                    code.append(stripIndent(lines.get(i), indent)).append('\n');
+                i++;
+                html.append("<pre><code");
+                if (!language.isEmpty()) html.append(" class=\"language-").append(escape(language)).append('"');
+                html.append('>').append(escape(code.toString())).append("</code></pre>\n");
+            } else if (line.strip().startsWith("$$")) {
+                StringBuilder tex = new StringBuilder(line.strip().substring(2));
+                boolean closed = tex.toString().strip().endsWith("$$");
+                for (i++; !closed && i < lines.size(); i++) {
+                    tex.append('\n').append(lines.get(i));
+                    closed = lines.get(i).strip().endsWith("$$");
+                }
+                String content = tex.toString().strip();
+                if (closed) content = content.substring(0, content.length() - 2);
+                html.append("<div class=\"math\">\\[").append(escape(content.strip())).append("\\]</div>\n");
+            } else if ((m = HEADING.matcher(line)).matches()) {
+                int level = m.group(1).length();
+                html.append("<h").append(level).append('>').append(inline(m.group(2) == null ? "" : m.group(2)))
+                    .append("</h").append(level).append(">\n");
+                i++;
+            } else if (RULE.matcher(line).matches()) {
+                html.append("<hr>\n");
+                i++;
+            } else if (QUOTE.matcher(line).matches()) {
+                List<String> quoted = new ArrayList<>();
+                for (; i < lines.size() && !lines.get(i).isBlank(); i++) {
+                    Matcher q = QUOTE.matcher(lines.get(i));
+                    quoted.add(q.matches() ? q.group(1) : lines.get(i)); // lazy continuation
+                }
+                html.append("<blockquote>\n");
+                blocks(quoted, false, html);
+                html.append("</blockquote>\n");
+            } else if (ITEM.matcher(line).matches()) {
+                i = list(lines, i, html);
+            } else if (HTML.matcher(line).find()) {
+                for (; i < lines.size() && !lines.get(i).isBlank(); i++) html.append(lines.get(i)).append('\n');
+            } else if (indentation(line) >= 4) {
+                int end = i + 1; // trailing blank lines are not part of the block
+                for (int j = i + 1; j < lines.size() && (indentation(lines.get(j)) >= 4 || lines.get(j).isBlank()); j++)
+                    if (!lines.get(j).isBlank()) end = j + 1;
+                StringBuilder code = new StringBuilder();
+                for (; i < end; i++) code.append(stripColumns(lines.get(i), 4)).append('\n');
+                html.append("<pre><code>").append(escape(code.toString())).append("</code></pre>\n");
+            } else if (line.contains("|") && i + 1 < lines.size() && TABLE_DELIMITER.matcher(lines.get(i + 1)).matches()
+                       && lines.get(i + 1).contains("-")) {
+                i = table(lines, i, html);
+            } else {
+                StringBuilder paragraph = new StringBuilder(line.stripLeading());
+                for (i++; i < lines.size() && !interruptsParagraph(lines.get(i)); i++) {
+                    Matcher setext = SETEXT.matcher(lines.get(i));
+                    if (setext.matches()) {
+                        int level = setext.group(1).charAt(0) == '=' ? 1 : 2;
+                        html.append("<h").append(level).append('>').append(inline(paragraph.toString().strip()))
+                            .append("</h").append(level).append(">\n");
+                        paragraph = null;
+                        i++;
+                        break;
+                    }
+                    paragraph.append('\n').append(lines.get(i).stripLeading());
+                }
+                if (paragraph == null) continue;
+                String text = inline(paragraph.toString().stripTrailing());
+                if (tight) html.append(text).append('\n');
+                else html.append("<p>").append(text).append("</p>\n");
+            }
+        }
+    }
+
+    private static boolean isClosingFence(String line, String fence) {
+        String stripped = line.strip();
+        return stripped.length() >= fence.length() && stripped.chars().allMatch(c -> c == fence.charAt(0));
+    }
+
+    private static String stripIndent(String line, int indent) {
+        int strip = 0;
+        while (strip < indent && strip < line.length() && line.charAt(strip) == ' ') strip++;
+        return line.substring(strip);
+    }
+
+    // Tabs count up to the next multiple of 4 columns, but only where indentation
+    // matters; the text itself, code in particular, keeps its tabs.
+    private static int column(String line, int index) {
+        int column = 0;
+        for (int i = 0; i < index; i++) column = line.charAt(i) == '\t' ? column + 4 - column % 4 : column + 1;
+        return column;
+    }
+
+    private static int indentation(String line) {
+        return column(line, line.length() - line.stripLeading().length());
+    }
+
+    // a tab that reaches beyond `columns` leaves the rest of its width as spaces
+    private static String stripColumns(String line, int columns) {
+        int column = 0, i = 0;
+        for (; column < columns && i < line.length() && (line.charAt(i) == ' ' || line.charAt(i) == '\t'); i++)
+            column = line.charAt(i) == '\t' ? column + 4 - column % 4 : column + 1;
+        return " ".repeat(Math.max(column - columns, 0)) + line.substring(i);
+    }
+
+    private static boolean interruptsParagraph(String line) {
+        if (line.isBlank()) return true;
+        Matcher item = ITEM.matcher(line);
+        if (item.matches() && !item.group(4).isBlank()
+            && (!Character.isDigit(item.group(2).charAt(0)) || item.group(2).startsWith("1"))) return true;
+        return FENCE.matcher(line).matches() || HEADING.matcher(line).matches() || QUOTE.matcher(line).matches()
+            || line.strip().startsWith("$$") || HTML.matcher(line).find()
+            || (RULE.matcher(line).matches() && !SETEXT.matcher(line).matches());
+    }
+
+    // consecutive items of the same kind; an item goes on as long as its lines are
+    // indented as far as its content, blank lines in between make the list loose
+    private static int list(List<String> lines, int i, StringBuilder html) {
+        Matcher first = ITEM.matcher(lines.get(i));
+        first.matches();
+        boolean ordered = Character.isDigit(first.group(2).charAt(0));
+        char delimiter = first.group(2).charAt(first.group(2).length() - 1);
+        List<List<String>> items = new ArrayList<>();
+        boolean loose = false;
+        while (i < lines.size()) {
+            Matcher m = ITEM.matcher(lines.get(i));
+            if (!m.matches() || !sameList(m, ordered, delimiter)) break;
+            int markerEnd = column(lines.get(i), m.end(2));
+            int indent = markerEnd + Math.min(Math.max(column(lines.get(i), m.end(3)) - markerEnd, 1), 4);
+            List<String> item = new ArrayList<>();
+            item.add(m.group(4));
+            int blank = 0;
+            for (i++; i < lines.size(); i++) {
+                String line = lines.get(i);
+                if (line.isBlank()) {
+                    blank++;
+                    continue;
+                }
+                if (indentation(line) >= indent) {
+                    for (; blank > 0; blank--) item.add("");
+                    item.add(stripColumns(line, indent));
+                } else if (blank == 0 && !ITEM.matcher(line).matches() && !interruptsParagraph(line)) {
+                    item.add(line.strip()); // lazy continuation of the paragraph
+                } else break;
+            }
+            if (item.contains("")) loose = true;
+            items.add(item);
+            if (blank > 0) {
+                Matcher next = i < lines.size() ? ITEM.matcher(lines.get(i)) : null;
+                if (next != null && next.matches() && sameList(next, ordered, delimiter)) loose = true;
+                else break;
+            }
+        }
+        String tag = ordered ? "ol" : "ul";
+        html.append('<').append(tag);
+        if (ordered) {
+            int start = Integer.parseInt(first.group(2).substring(0, first.group(2).length() - 1));
+            if (start != 1) html.append(" start=\"").append(start).append('"');
+        }
+        html.append(">\n");
+        for (List<String> item : items) {
+            html.append("<li>");
+            StringBuilder content = new StringBuilder();
+            blocks(item, !loose, content);
+            if (!loose && content.length() > 0 && content.charAt(content.length() - 1) == '\n' && content.indexOf("\n") == content.length() - 1)
+                content.setLength(content.length() - 1);
+            html.append(content).append("</li>\n");
+        }
+        html.append("</").append(tag).append(">\n");
+        return i;
+    }
+
+    private static boolean sameList(Matcher item, boolean ordered, char delimiter) {
+        String marker = item.group(2);
+        return Character.isDigit(marker.charAt(0)) == ordered && marker.charAt(marker.length() - 1) == delimiter;
+    }
+
+    private static int table(List<String> lines, int i, StringBuilder html) {
+        List<String> header = cells(lines.get(i));
+        List<String> delimiters = cells(lines.get(i + 1));
+        String[] align = new String[header.size()];
+        for (int c = 0; c < align.length && c < delimiters.size(); c++) {
+            String d = delimiters.get(c).strip();
+            boolean left = d.startsWith(":"), right = d.endsWith(":");
+            align[c] = left && right ? "center" : right ? "right" : left ? "left" : null;
+        }
+        html.append("<table>\n<thead>\n");
+        row(header, align, "th", html);
+        html.append("</thead>\n");
+        i += 2;
+        if (i < lines.size() && !lines.get(i).isBlank() && !interruptsParagraph(lines.get(i))) {
+            html.append("<tbody>\n");
+            for (; i < lines.size() && !lines.get(i).isBlank() && !interruptsParagraph(lines.get(i)); i++)
+                row(cells(lines.get(i)), align, "td", html);
+            html.append("</tbody>\n");
+        }
+        html.append("</table>\n");
+        return i;
+    }
+
+    private static void row(List<String> cells, String[] align, String tag, StringBuilder html) {
+        html.append("<tr>\n");
+        for (int c = 0; c < align.length; c++) {
+            html.append('<').append(tag);
+            if (align[c] != null) html.append(" style=\"text-align:").append(align[c]).append('"');
+            html.append('>').append(c < cells.size() ? inline(cells.get(c).strip()) : "").append("</").append(tag).append(">\n");
+        }
+        html.append("</tr>\n");
+    }
+
+    // splits at `|` outside of code spans and not escaped
+    private static List<String> cells(String line) {
+        String row = line.strip();
+        if (row.startsWith("|")) row = row.substring(1);
+        if (row.endsWith("|") && !row.endsWith("\\|")) row = row.substring(0, row.length() - 1);
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean inCode = false;
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (c == '\\' && i + 1 < row.length() && row.charAt(i + 1) == '|') {
+                cell.append('|');
+                i++;
+                continue;
+            }
+            if (c == '`') inCode = !inCode;
+            if (c == '|' && !inCode) {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else cell.append(c);
+        }
+        cells.add(cell.toString());
+        return cells;
+    }
+
+    private static final Pattern AUTOLINK = Pattern.compile("<((?:https?|ftp|mailto):[^\\s<>]*|[\\w.+-]+@[\\w-]+(?:\\.[\\w-]+)+)>");
+    private static final Pattern INLINE_HTML = Pattern.compile("</?[a-zA-Z][a-zA-Z0-9-]*(?:\\s+[a-zA-Z_:][\\w.:-]*(?:\\s*=\\s*(?:\"[^\"]*\"|'[^']*'|[^\\s\"'=<>`]+))?)*\\s*/?>|<!--.*?-->");
+    private static final Pattern ENTITY = Pattern.compile("&(?:#\\d{1,7}|#[xX][0-9a-fA-F]{1,6}|[a-zA-Z][a-zA-Z0-9]{1,31});");
+    private static final Pattern URL = Pattern.compile("https?://[^\\s<]+");
+    private static final Pattern TITLED = Pattern.compile("^(\\S*)\\s+(?:\"(.*)\"|'(.*)')$", Pattern.DOTALL);
+    private static final String PUNCTUATION = "!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~";
+
+    static String inline(String text) {
+        StringBuilder html = new StringBuilder(text.length() + 16);
+        inline(text, html);
+        return html.toString();
+    }
+
+    private static void inline(String text, StringBuilder html) {
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\' -> {
+                    if (i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+                        html.append("<br>\n");
+                        i += 2;
+                    } else if (i + 1 < text.length() && PUNCTUATION.indexOf(text.charAt(i + 1)) >= 0) {
+                        escape(text.charAt(i + 1), html);
+                        i += 2;
+                    } else {
+                        html.append(c);
+                        i++;
+                    }
+                }
+                case '`' -> i = codeSpan(text, i, html);
+                case '$' -> i = math(text, i, html);
+                case '*', '_' -> i = emphasis(text, i, html);
+                case '~' -> i = strikethrough(text, i, html);
+                case '!' -> {
+                    int end = i + 1 < text.length() && text.charAt(i + 1) == '[' ? link(text, i + 1, true, html) : -1;
+                    if (end < 0) {
+                        html.append('!');
+                        i++;
+                    } else i = end;
+                }
+                case '[' -> {
+                    int end = link(text, i, false, html);
+                    if (end < 0) {
+                        html.append('[');
+                        i++;
+                    } else i = end;
+                }
+                case '<' -> {
+                    Matcher m = AUTOLINK.matcher(text).region(i, text.length());
+                    Matcher tag = INLINE_HTML.matcher(text).region(i, text.length());
+                    if (m.lookingAt()) {
+                        String target = m.group(1);
+                        String href = target.contains(":") || !target.contains("@") ? target : "mailto:" + target;
+                        html.append("<a href=\"").append(escape(href)).append("\">").append(escape(target)).append("</a>");
+                        i = m.end();
+                    } else if (tag.lookingAt()) {
+                        html.append(tag.group());
+                        i = tag.end();
+                    } else {
+                        html.append("&lt;");
+                        i++;
+                    }
+                }
+                case '&' -> {
+                    Matcher m = ENTITY.matcher(text).region(i, text.length());
+                    if (m.lookingAt()) {
+                        html.append(m.group());
+                        i = m.end();
+                    } else {
+                        html.append("&amp;");
+                        i++;
+                    }
+                }
+                case 'h' -> {
+                    Matcher m = URL.matcher(text).region(i, text.length());
+                    if ((i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1))) && m.lookingAt()) {
+                        int end = m.end();
+                        while (end > i && ".,:;!?)'\"".indexOf(text.charAt(end - 1)) >= 0) end--;
+                        String url = text.substring(i, end);
+                        html.append("<a href=\"").append(escape(url)).append("\">").append(escape(url)).append("</a>");
+                        i = end;
+                    } else {
+                        html.append(c);
+                        i++;
+                    }
+                }
+                case '\n' -> {
+                    int spaces = 0;
+                    while (spaces < html.length() && html.charAt(html.length() - 1 - spaces) == ' ') spaces++;
+                    html.setLength(html.length() - spaces);
+                    html.append(spaces >= 2 ? "<br>\n" : "\n");
+                    i++;
+                }
+                default -> {
+                    escape(c, html);
+                    i++;
+                }
+            }
+        }
+    }
+
+    private static int codeSpan(String text, int start, StringBuilder html) {
+        int ticks = run(text, start, '`');
+        int close = start + ticks;
+        while ((close = text.indexOf('`', close)) >= 0) {
+            int closing = run(text, close, '`');
+            if (closing == ticks) break;
+            close += closing;
+        }
+        if (close < 0) {
+            html.append(text, start, start + ticks);
+            return start + ticks;
+        }
+        String code = text.substring(start + ticks, close).replace('\n', ' ');
+        if (code.length() > 2 && code.startsWith(" ") && code.endsWith(" ") && !code.isBlank())
+            code = code.substring(1, code.length() - 1);
+        html.append("<code>").append(escape(code)).append("</code>");
+        return close + ticks;
+    }
+
+    // `$..$` as in pandoc: no space after the opening and before the closing
+    // dollar, and no digit after it, so that prices stay text
+    private static int math(String text, int start, StringBuilder html) {
+        boolean display = text.startsWith("$$", start);
+        String delimiter = display ? "$$" : "$";
+        int from = start + delimiter.length();
+        int close = mathEnd(text, start);
+        if (close < 0) {
+            html.append(delimiter);
+            return from;
+        }
+        String tex = escape(text.substring(from, close));
+        if (display) html.append("<span class=\"math display\">\\[").append(tex).append("\\]</span>");
+        else html.append("<span class=\"math\">\\(").append(tex).append("\\)</span>");
+        return close + delimiter.length();
+    }
+
+    // the index of the closing delimiter of the math span at `start`, or -1
+    private static int mathEnd(String text, int start) {
+        boolean display = text.startsWith("$$", start);
+        String delimiter = display ? "$$" : "$";
+        int from = start + delimiter.length();
+        int close = text.indexOf(delimiter, from);
+        while (close > 0 && text.charAt(close - 1) == '\\') close = text.indexOf(delimiter, close + 1);
+        boolean valid = close > from
+            && (display || (!Character.isWhitespace(text.charAt(from)) && !Character.isWhitespace(text.charAt(close - 1))
+                            && (close + 1 >= text.length() || !Character.isDigit(text.charAt(close + 1)))));
+        return valid ? close : -1;
+    }
+
+    // a run of up to three `*` or `_` closes with the same run; `_` only
+    // at word boundaries, so that snake_case stays as it is
+    private static int emphasis(String text, int start, StringBuilder html) {
+        char c = text.charAt(start);
+        int length = run(text, start, c);
+        boolean canOpen = start + length < text.length() && !Character.isWhitespace(text.charAt(start + length))
+            && (c == '*' || start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1)));
+        if (canOpen && length <= 3) {
+            int close = closingRun(text, start + length, c, length);
+            if (close > 0) {
+                String open = length == 1 ? "<em>" : length == 2 ? "<strong>" : "<em><strong>";
+                String end = length == 1 ? "</em>" : length == 2 ? "</strong>" : "</strong></em>";
+                html.append(open);
+                inline(text.substring(start + length, close), html);
+                html.append(end);
+                return close + length;
+            }
+        }
+        html.append(text, start, start + length);
+        return start + length;
+    }
+
+    private static int closingRun(String text, int from, char c, int length) {
+        for (int i = from; i < text.length(); i++) {
+            char d = text.charAt(i);
+            if (d == '\\') {
+                i++;
+                continue;
+            }
+            if (d == '`') { // emphasis does not end within a code span
+                int ticks = run(text, i, '`');
+                int close = text.indexOf("`".repeat(ticks), i + ticks);
+                if (close > 0) i = close + ticks - 1;
+                continue;
+            }
+            if (d == '$') { // nor within math
+                int close = mathEnd(text, i);
+                if (close > 0) i = close + (text.startsWith("$$", i) ? 2 : 1) - 1;
+                continue;
+            }
+            if (d != c) continue;
+            int found = run(text, i, c);
+            boolean canClose = !Character.isWhitespace(text.charAt(i - 1))
+                && (c == '*' || i + found >= text.length() || !Character.isLetterOrDigit(text.charAt(i + found)));
+            if (found == length && canClose) return i;
+            i += found - 1;
+        }
+        return -1;
+    }
+
+    private static int strikethrough(String text, int start, StringBuilder html) {
+        if (run(text, start, '~') == 2) {
+            int close = text.indexOf("~~", start + 2);
+            if (close > start + 2) {
+                html.append("<del>");
+                inline(text.substring(start + 2, close), html);
+                html.append("</del>");
+                return close + 2;
+            }
+        }
+        int length = run(text, start, '~');
+        html.append(text, start, start + length);
+        return start + length;
+    }
+
+    // `[text](url "title")` or `![alt](url "title")`, -1 if there is none at `start`
+    private static int link(String text, int start, boolean image, StringBuilder html) {
+        int depth = 0, close = -1;
+        for (int i = start; i < text.length() && close < 0; i++) {
+            char c = text.charAt(i);
+            if (c == '\\') i++;
+            else if (c == '`') {
+                int ticks = run(text, i, '`');
+                int end = text.indexOf("`".repeat(ticks), i + ticks);
+                if (end > 0) i = end + ticks - 1;
+            }
+            else if (c == '[') depth++;
+            else if (c == ']' && --depth == 0) close = i;
+        }
+        if (close < 0 || close + 1 >= text.length() || text.charAt(close + 1) != '(') return -1;
+        int end = close + 2, parentheses = 1;
+        for (; end < text.length(); end++) {
+            char c = text.charAt(end);
+            if (c == '\\') end++;
+            else if (c == '(') parentheses++;
+            else if (c == ')' && --parentheses == 0) break;
+        }
+        if (end >= text.length()) return -1;
+        String destination = text.substring(close + 2, end).strip();
+        String title = null;
+        Matcher titled = TITLED.matcher(destination);
+        if (titled.matches()) {
+            destination = titled.group(1);
+            title = titled.group(2) != null ? titled.group(2) : titled.group(3);
+        }
+        if (destination.startsWith("<") && destination.endsWith(">")) destination = destination.substring(1, destination.length() - 1);
+        String label = text.substring(start + 1, close);
+        if (image) {
+            html.append("<img src=\"").append(escape(destination)).append("\" alt=\"").append(escape(label)).append('"');
+            if (title != null) html.append(" title=\"").append(escape(title)).append('"');
+            html.append('>');
+        } else {
+            html.append("<a href=\"").append(escape(destination)).append('"');
+            if (title != null) html.append(" title=\"").append(escape(title)).append('"');
+            html.append('>');
+            inline(label, html);
+            html.append("</a>");
+        }
+        return end + 1;
+    }
+
+    private static int run(String text, int start, char c) {
+        int end = start;
+        while (end < text.length() && text.charAt(end) == c) end++;
+        return end - start;
+    }
+
+    // in a single pass, for text as well as attribute values
+    static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length() + 16);
+        for (int i = 0; i < text.length(); i++) escape(text.charAt(i), escaped);
+        return escaped.toString();
+    }
+
+    private static void escape(char c, StringBuilder html) {
+        switch (c) {
+            case '&' -> html.append("&amp;");
+            case '<' -> html.append("&lt;");
+            case '>' -> html.append("&gt;");
+            case '"' -> html.append("&quot;");
+            default -> html.append(c);
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package lvp.views;
 
+import java.util.List;
+
+import lvp.Asset;
 import lvp.Clerk;
 import lvp.Server;
 
 public class Dot implements Clerk {
-    final String visLibOnlinePath = "https://unpkg.com/vis-network/standalone/umd/vis-network.min.js";
-    final String visLibOfflinePath = "views/dot/vis-network.min.js";
-    final String dotLibPath = "views/dot/dot.js";
+    // dot.js uses vis only when drawing, so both load in parallel
+    public static final List<Asset> ASSETS = List.of(
+        Asset.of("https://unpkg.com/vis-network/standalone/umd/vis-network.min.js", "views/dot/vis-network.min.js"),
+        Asset.of("views/dot/dot.js")
+    );
+
     final String ID;
     Server server;
     int width, height;
@@ -16,8 +22,7 @@ public class Dot implements Clerk {
         this.width = width;
         this.height = height;
 
-        Clerk.load(server, visLibOnlinePath, visLibOfflinePath);
-        Clerk.load(server, dotLibPath);
+        Clerk.load(server, ASSETS);
 
         ID = Clerk.getHashID(this);
 
@@ -29,9 +34,44 @@ public class Dot implements Clerk {
     public Dot(int width, int height) { this(Clerk.serve(), width, height); }
     public Dot() { this(Clerk.serve());}
 
+    // Replaces the graph, which is laid out anew; late browsers need only the latest
     public Dot draw(String dotString) {
-        String escaped = dotString.replaceAll("\\\"", "\\\\\"").replaceAll("\\n", "");
-        Clerk.script(server, "dot" + ID + ".draw(\"dinetwork{" + escaped + "}\")");
+        server.resetView("dot" + ID);
+        server.call("dot" + ID, "dot" + ID + ".draw(" + Clerk.jsString("dinetwork{" + dotString + "}") + ")");
+        return this;
+    }
+
+    // Changes the graph into the one described, nodes and edges that stay keep
+    // their place; the browser works out the differences
+    public Dot update(String dotString) {
+        server.resetView("dot" + ID);
+        server.call("dot" + ID, "dot" + ID + ".update(" + Clerk.jsString("dinetwork{" + dotString + "}") + ")");
+        return this;
+    }
+
+    // changes of single nodes and edges, for graphs that grow step by step
+    public Dot addNode(String id, String label) {
+        server.call("dot" + ID, "dot" + ID + ".addNode({id: " + Clerk.jsString(id) + ", label: " + Clerk.jsString(label) + "})");
+        return this;
+    }
+
+    public Dot addNode(String id) { return addNode(id, id); }
+
+    public Dot removeNode(String id) {
+        server.call("dot" + ID, "dot" + ID + ".removeNode(" + Clerk.jsString(id) + ")");
+        return this;
+    }
+
+    public Dot addEdge(String from, String to, String label) {
+        server.call("dot" + ID, "dot" + ID + ".addEdge({from: " + Clerk.jsString(from) + ", to: " + Clerk.jsString(to) +
+                                (label == null ? "" : ", label: " + Clerk.jsString(label)) + "})");
+        return this;
+    }
+
+    public Dot addEdge(String from, String to) { return addEdge(from, to, null); }
+
+    public Dot removeEdge(String from, String to) {
+        server.call("dot" + ID, "dot" + ID + ".removeEdge(" + Clerk.jsString(from) + ", " + Clerk.jsString(to) + ")");
         return this;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,62 @@
+package lvp.views;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import lvp.Asset;
+import lvp.Clerk;
+import lvp.Server;
+import lvp.skills.Markdown;
+
+// A markdown text on the page that can be changed with `update`. The text is
+// rendered block by block, each block (a paragraph, a list, fenced code, a
+// formula, ...) tagged with a hash of its markdown. Patching the cell in the
+// browser keeps the blocks whose hash has not changed, together with their
+// highlighted code and typeset math; only new blocks are processed, and only
+// when they come into view (see markdown.js).
+public final class MarkdownCell {
+    public static final List<Asset> ASSETS = List.of(Asset.of("views/markdown/markdown.js"));
+
+    private final Server server;
+    private final UnaryOperator<String> renderer; // null: rendered in the browser by `browserRenderer`
+    private final String browserRenderer;
+    private final String ID = Clerk.generateID(10);
+
+    MarkdownCell(Server server, UnaryOperator<String> renderer, String browserRenderer) {
+        this.server = server;
+        this.renderer = renderer;
+        this.browserRenderer = browserRenderer;
+        Clerk.load(server, ASSETS);
+    }
+
+    public String id() { return ID; }
+
+    public MarkdownCell update(String markdownText) {
+        server.resetView(ID); // the calls for the previous text are not needed by late joiners
+        if (renderer == null) {
+            // Using `preformatted` is a hack to get a Java String into the Browser without interpretation
+            Clerk.write(server, ID, "<script type='preformatted'>" + markdownText + "</script>");
+            server.call(ID, "renderMarkdown('" + ID + "', text => " + browserRenderer + "(text));");
+            return this;
+        }
+        StringBuilder html = new StringBuilder();
+        for (String block : Markdown.split(markdownText))
+            html.append("<div data-hash=\"").append(hash(block)).append("\">").append(renderer.apply(block)).append("</div>\n");
+        Clerk.write(server, ID, html.toString());
+        // highlight.js and MathJax are loaded by the browser, once a block needs them
+        if (html.indexOf("<code class=\"language-") >= 0 || html.indexOf("class=\"math") >= 0)
+            server.call(ID, "typesetMarkdown('" + ID + "');");
+        return this;
+    }
+
+    private static String hash(String block) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(block.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every Java platform has SHA-256
+        }
+    }
+}
@@ -1,52 +1,60 @@
 package lvp.views;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import lvp.Asset;
 import lvp.Clerk;
 import lvp.Server;
+import lvp.skills.Markdown;
 
-public record MarkdownIt(Server server) implements Clerk {
+// Renders markdown in Java by default (see `Markdown`), so the browser only gets
+// HTML. `inBrowser` renders with markdown-it in the browser, as it used to.
+public record MarkdownIt(Server server, UnaryOperator<String> renderer) implements Clerk {
+    // the libraries do not need each other to load, so they are loaded in parallel
+    public static final List<Asset> ASSETS = List.of(
+        // Asset.of("https://cdn.jsdelivr.net/npm/markdown-it@14.1.0/dist/markdown-it.min.js", "views/markdown/markdown-it.min.js"),
+        Asset.of("views/markdown/markdown-it.min.js"),
+        Asset.of("views/markdown/highlight.min.js"),
+        Asset.of("views/markdown/mathjax3.js")
+    );
+
+    public MarkdownIt(Server server) { this(server, Markdown::toHtml); }
+
+    public static MarkdownIt inBrowser(Server server) { return new MarkdownIt(server, null); }
+
+    // the parser is set up once per server, not for every `MarkdownIt`; it has a
+    // global of its own, since `Marked` sets up its parser on the same page
     public MarkdownIt {
-        // String onlinePath = "https://cdn.jsdelivr.net/npm/markdown-it@14.1.0/dist/markdown-it.min.js";
-        // String localPath = "views/markdown/markdown-it.min.js";
-        // Clerk.load(server, onlinePath, localPath);
-        Clerk.load(server, "views/markdown/markdown-it.min.js");
-        Clerk.load(server, "views/markdown/highlight.min.js");
-        Clerk.load(server, "views/markdown/mathjax3.js");
-        // Clerk.script(server, """
-        //     var md = markdownit({
-        //         html: true,
-        //         linkify: true,
-        //         typographer: true
-        //     });
-        //     """);
-        Clerk.script(server, """
-            var md = markdownit({
-                highlight: function (str, lang) {
-                    if (lang && hljs.getLanguage(lang)) {
-                        try {
-                            return hljs.highlight(str, { language: lang }).value;
-                        } catch (__) {}
-                    }
-                    return ''; // use external default escaping
-                },
-                html: true,
-                linkify: true,
-                typographer: true
-            });
-            md.use(window.mathjax3);
-            """);
+        if (renderer == null) {
+            // Clerk.script(server, """
+            //     var md = markdownit({
+            //         html: true,
+            //         linkify: true,
+            //         typographer: true
+            //     });
+            //     """);
+            server.runtime("markdown-it", ASSETS, """
+                var markdownItRenderer = markdownit({
+                    highlight: function (str, lang) {
+                        if (lang && hljs.getLanguage(lang)) {
+                            try {
+                                return hljs.highlight(str, { language: lang }).value;
+                            } catch (__) {}
+                        }
+                        return ''; // use external default escaping
+                    },
+                    html: true,
+                    linkify: true,
+                    typographer: true
+                });
+                markdownItRenderer.use(window.mathjax3);
+                """);
+        }
     }
-    public String write(String markdownText) {
-        String ID = Clerk.generateID(10);
-        // Using `preformatted` is a hack to get a Java String into the Browser without interpretation
-        Clerk.write(server, "<script id='" + ID + "' type='preformatted'>" + markdownText + "</script>");
-        Clerk.call(server, "var scriptElement = document.getElementById('" + ID  + "');"
-        +
-        """
-        var divElement = document.createElement('div');
-        divElement.id = scriptElement.id;
-        divElement.innerHTML = md.render(scriptElement.textContent);
-        scriptElement.parentNode.replaceChild(divElement, scriptElement);
-        """
-        );
-        return ID;
+    // returns the id of the element that shows the text
+    public String write(String markdownText) { return cell(markdownText).id(); }
+
+    // the returned cell shows the text and can be updated with a new one
+    public MarkdownCell cell(String markdownText) {
+        return new MarkdownCell(server, renderer, "markdownItRenderer.render").update(markdownText);
     }
 }
@@ -1,31 +1,33 @@
 package lvp.views;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import lvp.Asset;
 import lvp.Clerk;
 import lvp.Server;
+import lvp.skills.Markdown;
+
+// Renders markdown in Java by default, see `MarkdownIt`; `inBrowser` uses marked.
+public record Marked(Server server, UnaryOperator<String> renderer) implements Clerk {
+    public static final List<Asset> ASSETS = List.of(
+        Asset.of("https://cdn.jsdelivr.net/npm/marked/marked.min.js", "views/markdown/marked.min.js")
+    );
+
+    public Marked(Server server) { this(server, Markdown::toHtml); }
+
+    public static Marked inBrowser(Server server) { return new Marked(server, null); }
 
-public record Marked(Server server) implements Clerk {
     public Marked {
-        String onlinePath = "https://cdn.jsdelivr.net/npm/marked/marked.min.js";
-        String localPath = "views/markdown/marked.min.js";
-        Clerk.load(server, onlinePath, localPath);
-        Clerk.script(server, """
-            var md = marked.use({
-                gfm: true
-            });
-            """);
+        if (renderer == null) {
+            server.runtime("marked", ASSETS, """
+                var markedRenderer = marked.use({
+                    gfm: true
+                });
+                """);
+        }
     }
-    public String write(String markdownText) {
-        String ID = Clerk.generateID(10);
-        // Using `preformatted` is a hack to get a Java String into the Browser without interpretation
-        Clerk.write(server, "<script id='" + ID + "' type='preformatted'>" + markdownText + "</script>");
-        Clerk.call(server, "var scriptElement = document.getElementById('" + ID + "');"
-        +
-        """
-        var divElement = document.createElement('div');
-        divElement.id = scriptElement.id;
-        divElement.innerHTML = md.parse(scriptElement.textContent);
-        scriptElement.parentNode.replaceChild(divElement, scriptElement);
-        """);
-        return ID;
+    public String write(String markdownText) { return cell(markdownText).id(); }
+
+    public MarkdownCell cell(String markdownText) {
+        return new MarkdownCell(server, renderer, "markedRenderer.parse").update(markdownText);
     }
 }
-
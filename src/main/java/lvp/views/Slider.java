@@ -16,20 +16,11 @@ public class Slider implements Clerk {
         Clerk.script(server, "const slider" + ID + " = document.getElementById('slider" + ID + "');");
     }
     public Slider attachTo(Consumer<String> delegate) {
-        this.server.createResponseContext("/slider" + ID, delegate, ID);
+        this.server.createInputContext("/slider" + ID, delegate, ID);
         Clerk.script(server, Text.fillOut(
             """
-            slider${0}.addEventListener('input', (event) => {
-                if (locks.includes('${0}')) return;
-                locks.push('${0}');
-                const value = event.target.value;
-                console.log(`slider${0}: value = ${value}`);
-                fetch('slider${0}', {
-                   method: 'post',
-                    body: value.toString()
-                }).catch(console.error);
-            });
-            """, Map.of("0", ID, "value", "${value}")));
+            slider${0}.addEventListener('input', (event) => sendInput('${0}', 'slider${0}', event.target.value));
+            """, Map.of("0", ID)));
         return this;
     }
 }
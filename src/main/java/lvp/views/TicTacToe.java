@@ -1,12 +1,15 @@
 package lvp.views;
 
+import java.util.List;
+
+import lvp.Asset;
 import lvp.Clerk;
 import lvp.Server;
 
 public class TicTacToe implements Clerk {
     public final String ID;
     public final int width, height;
-    final String libPath = "views/tictactoe/tictactoe.js";
+    public static final List<Asset> ASSETS = List.of(Asset.of("views/tictactoe/tictactoe.js"));
     Server server;
     
     int[] fields = {0,0,0,0,0,0,0,0,0};
@@ -16,13 +19,14 @@ public class TicTacToe implements Clerk {
         this.server = server;
         this.width  = Math.max(1, Math.abs(width));  // width is at least of size 1
         this.height = Math.max(1, Math.abs(height)); // height is at least of size 1
-        Clerk.load(server, libPath);
+        Clerk.load(server, ASSETS);
         ID = Clerk.getHashID(this);
 
         Clerk.write(server, "<canvas id='tttCanvas" + ID + "' width='" + this.width + "' height='" + this.height + "' style='border:1px solid #000;'></canvas>");
         Clerk.script(server, "const ttt" + ID + " = new TicTacToe(document.getElementById('tttCanvas" + ID + "'), 'ttt" + ID + "');");
         
-        this.server.createResponseContext("/ttt" + ID, response -> {
+        // a move is a widget value like that of a slider, see `Server.createInputContext`
+        this.server.createInputContext("/ttt" + ID, response -> {
             int i = Integer.parseInt(response);
             if (i >= 0 && i < 9) {
                 move(i);
@@ -31,7 +35,7 @@ public class TicTacToe implements Clerk {
                     this.sendWinPosition(winnerPos[0], winnerPos[2]);
                 }
             }
-        });
+        }, "ttt" + ID);
     }
 
     public TicTacToe(Server server) { this(server, 500, 500); }
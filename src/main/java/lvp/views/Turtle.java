@@ -1,5 +1,11 @@
 package lvp.views;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import lvp.Asset;
 import lvp.Clerk;
 import lvp.Server;
 import lvp.views.turtle.Font;
@@ -12,12 +18,32 @@ public class Turtle implements Clerk {
     double textSize = 10;
     Font.Align textAlign = Font.Align.CENTER;
 
+    // The turtle's state lives here, not in the browser. Contiguous segments of the
+    // same style are merged into polylines (collinear ones into a single line) and
+    // each style run is sent as one path, which turtle.js strokes with one call.
+    double x, y, angle;
+    boolean isPenDown;
+    int color, sentColor;
+    double lineWidth, sentLineWidth;
+
+    final ByteArrayOutputStream pending = new ByteArrayOutputStream(); // ready to be sent
+    final ByteArrayOutputStream run = new ByteArrayOutputStream();     // PATHs of the current style
+    double[] points = new double[64];                                 // open polyline: x0, y0, x1, y1, ...
+    int pointCount = 0;
+
+    // commands travel as a binary stream (opcode byte + float64 args), decoded
+    // by `Turtle.run` in turtle.js; keep both lists of opcodes in sync
+    static final byte RESET = 0, COLOR = 1, LINE_WIDTH = 2, PATH = 3, STROKE = 4;
+
+    public static final List<Asset> ASSETS = List.of(Asset.of("views/turtle/turtle.js"));
+
     public Turtle(Server server, int width, int height) {
         this.server = server;
         this.width  = Math.max(1, Math.abs(width));  // width is at least of size 1
         this.height = Math.max(1, Math.abs(height)); // height is at least of size 1
         ID = Clerk.getHashID(this);
-        Clerk.load(server, "views/turtle/turtle.js");
+        home();
+        Clerk.load(server, ASSETS);
         Clerk.write(server, "<canvas id='turtleCanvas" + ID + "' width='" + this.width + "' height='" + this.height + "' style='border:1px solid #000;'></canvas>");
         Clerk.script(server, "const turtle" + ID + " = new Turtle(document.getElementById('turtleCanvas" + ID + "'));");
     }
@@ -26,39 +52,134 @@ public class Turtle implements Clerk {
     public Turtle(int width, int height) { this(Clerk.serve(), width, height); }
     public Turtle() { this(Clerk.serve()); }
 
-    public Turtle penDown() {
-        Clerk.call(server, "turtle" + ID + ".penDown();");
-        return this;
+    // same defaults as `reset()` in turtle.js
+    private void home() {
+        x = width / 2.0;
+        y = height / 2.0;
+        angle = 0;
+        isPenDown = true;
+        color = sentColor = 0;
+        lineWidth = sentLineWidth = 1;
+    }
+
+    private static byte[] command(byte opcode, double... args) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 8 * args.length).put(opcode);
+        for (double arg : args) buffer.putDouble(arg);
+        return buffer.array();
     }
 
-    public Turtle penUp() {
-        Clerk.call(server, "turtle" + ID + ".penUp();");
+    private void segment(double toX, double toY) {
+        if (toX == x && toY == y) return;
+        int n = pointCount;
+        if (n == 0 || points[n - 2] != x || points[n - 1] != y) {
+            closePolyline();
+            addPoint(x, y);
+        } else if (n >= 4) { // extend the last line instead of adding a point if collinear
+            double dx1 = x - points[n - 4], dy1 = y - points[n - 3];
+            double dx2 = toX - x, dy2 = toY - y;
+            double cross = dx1 * dy2 - dy1 * dx2;
+            double dot = dx1 * dx2 + dy1 * dy2;
+            if (dot > 0 && Math.abs(cross) <= 1e-9 * Math.hypot(dx1, dy1) * Math.hypot(dx2, dy2)) {
+                pointCount -= 2;
+            }
+        }
+        addPoint(toX, toY);
+    }
+
+    private void addPoint(double px, double py) {
+        if (pointCount + 2 > points.length) points = Arrays.copyOf(points, points.length * 2);
+        points[pointCount++] = px;
+        points[pointCount++] = py;
+    }
+
+    private void closePolyline() {
+        if (pointCount >= 4) {
+            double[] args = new double[pointCount + 1];
+            args[0] = pointCount / 2;
+            System.arraycopy(points, 0, args, 1, pointCount);
+            run.writeBytes(command(PATH, args));
+        }
+        pointCount = 0;
+    }
+
+    private void sendStyle() {
+        if (color != sentColor)
+            pending.writeBytes(command(COLOR, (color >> 16) & 0xFF, (color >> 8) & 0xFF, color & 0xFF));
+        if (lineWidth != sentLineWidth)
+            pending.writeBytes(command(LINE_WIDTH, lineWidth));
+        sentColor = color;
+        sentLineWidth = lineWidth;
+    }
+
+    private void endRun() {
+        closePolyline();
+        if (run.size() == 0) return;
+        sendStyle();
+        pending.writeBytes(run.toByteArray());
+        run.reset();
+        pending.writeBytes(command(STROKE));
+    }
+
+    // called by the server right before other events are sent
+    private synchronized byte[] drain() {
+        endRun();
+        byte[] bytes = pending.toByteArray();
+        pending.reset();
+        return bytes;
+    }
+
+    private Turtle changed() {
+        server.defer("turtle" + ID, this::drain);
         return this;
     }
 
-    public Turtle forward(double distance) {
-        Clerk.call(server, "turtle" + ID + ".forward(" + distance + ");");
+    public synchronized Turtle penDown() {
+        isPenDown = true;
         return this;
     }
 
-    public Turtle backward(double distance) {
-        Clerk.call(server, "turtle" + ID + ".backward(" + distance + ");");
+    public synchronized Turtle penUp() {
+        isPenDown = false;
         return this;
     }
 
-    public Turtle left(double degrees) {
-        Clerk.call(server, "turtle" + ID + ".left(" + degrees + ");");
+    public Turtle forward(double distance) {
+        synchronized (this) {
+            double radians = Math.toRadians(angle);
+            double newX = x + distance * Math.cos(radians);
+            double newY = y + distance * Math.sin(radians);
+            if (!isPenDown) {
+                x = newX;
+                y = newY;
+                return this;
+            }
+            segment(newX, newY);
+            x = newX;
+            y = newY;
+        }
+        return changed();
+    }
+
+    public Turtle backward(double distance) { return forward(-distance); }
+
+    public synchronized Turtle left(double degrees) {
+        angle -= degrees;
         return this;
     }
 
-    public Turtle right(double degrees) {
-        Clerk.call(server, "turtle" + ID + ".right(" + degrees + ");");
+    public synchronized Turtle right(double degrees) {
+        angle += degrees;
         return this;
     }
 
     public Turtle color(int red, int green, int blue) {
-        Clerk.call(server, "turtle" + ID + ".color('rgb(" + (red & 0xFF) + ", " + (green & 0xFF) + ", " + (blue & 0xFF) + ")');");
-        return this;
+        int rgb = (red & 0xFF) << 16 | (green & 0xFF) << 8 | (blue & 0xFF);
+        synchronized (this) {
+            if (rgb == color) return this;
+            endRun();
+            color = rgb;
+        }
+        return changed();
     }
 
     public Turtle color(int rgb) {
@@ -67,32 +188,59 @@ public class Turtle implements Clerk {
     }
 
     public Turtle lineWidth(double width) {
-        Clerk.call(server, "turtle" + ID + ".lineWidth('" + width + "');");
-        return this;
+        synchronized (this) {
+            if (width == lineWidth) return this;
+            endRun();
+            lineWidth = width;
+        }
+        return changed();
     }
 
     public Turtle reset() {
-        Clerk.call(server, "turtle" + ID + ".reset();");
-        return this;
+        server.resetView("turtle" + ID); // late browsers need not replay the erased drawing
+        synchronized (this) {
+            // whatever has not been sent yet would be erased anyway
+            pending.reset();
+            run.reset();
+            pointCount = 0;
+            home();
+            pending.writeBytes(command(RESET));
+        }
+        return changed();
     }
 
     public Turtle text(String text, Font font, double size, Font.Align align) {
-        textFont = font;
-        textSize = size;
-        textAlign = align;
-        Clerk.call(server, "turtle" + ID + ".text('" + text + "', '" + "" + size + "px " + font + "', '" + align + "')");
+        double textX, textY, textAngle;
+        synchronized (this) {
+            textFont = font;
+            textSize = size;
+            textAlign = align;
+            endRun();
+            sendStyle(); // text is filled with the current color
+            textX = x;
+            textY = y;
+            textAngle = angle;
+        }
+        changed();
+        server.call("turtle" + ID, "turtle" + ID + ".textAt('" + text + "', '" + "" + size + "px " + font + "', '" + align + "', " +
+                            textX + ", " + textY + ", " + textAngle + ")");
         return this;
     }
 
     public Turtle text(String text) { return text(text, textFont, textSize, textAlign); }
 
-    public Turtle moveTo(double x, double y) {
-        Clerk.call(server, "turtle" + ID + ".moveTo(" + x + ", " + y + ");");
+    public synchronized Turtle moveTo(double x, double y) {
+        this.x = x;
+        this.y = y;
         return this;
     }
 
     public Turtle lineTo(double x, double y) {
-        Clerk.call(server, "turtle" + ID + ".lineTo(" + x + ", " + y + ");");
-        return this;
+        synchronized (this) {
+            segment(x, y);
+            this.x = x;
+            this.y = y;
+        }
+        return changed();
     }
-}
\ No newline at end of file
+}
@@ -1,20 +1,80 @@
+// The nodes and edges of a graph are kept in vis DataSets shown by a single
+// vis.Network. Changes go into the DataSets, so the network keeps the layout of
+// whatever has not changed instead of starting over.
 class Dot {
     constructor(container, width, height) {
         this.container = container;
         this.width = width;
         this.height = height;
+        this.network = null;
     }
-    draw(dotString) {
+    // vis may still be loading when a Dot is created
+    graph() {
+        if (!this.network) {
+            this.nodes = new vis.DataSet();
+            this.edges = new vis.DataSet();
+            this.network = new vis.Network(this.container, { nodes: this.nodes, edges: this.edges },
+                                           { width: this.width.toString(), height: this.height.toString() });
+        }
+        return this;
+    }
+    // edges get ids `from->to`, so they can be told apart when the graph changes
+    parse(dotString) {
         const parsedData = vis.parseDOTNetwork(dotString);
-
-        const data = {
-            nodes: parsedData.nodes,
-            edges: parsedData.edges
-        };
+        const counts = {};
+        for (const edge of parsedData.edges) {
+            const id = edge.from + "->" + edge.to;
+            edge.id = counts[id] ? id + "#" + counts[id] : id;
+            counts[id] = (counts[id] ?? 0) + 1;
+        }
         const options = parsedData.options;
         options.width = this.width.toString();
         options.height = this.height.toString();
-
-        new vis.Network(this.container, data, options);
+        return parsedData;
+    }
+    // replaces the graph, which is laid out anew
+    draw(dotString) {
+        const parsedData = this.parse(dotString);
+        this.graph();
+        this.network.setOptions(parsedData.options);
+        this.nodes.clear();
+        this.edges.clear();
+        this.nodes.add(parsedData.nodes);
+        this.edges.add(parsedData.edges);
+    }
+    // changes the graph into the one described: nodes and edges that stay keep their place
+    update(dotString) {
+        const parsedData = this.parse(dotString);
+        this.graph();
+        this.network.setOptions(parsedData.options);
+        Dot.sync(this.nodes, parsedData.nodes);
+        Dot.sync(this.edges, parsedData.edges);
+    }
+    // attributes an item no longer has are set to null, vis resets them then
+    static sync(dataSet, items) {
+        const ids = new Set(items.map(item => item.id));
+        dataSet.remove(dataSet.getIds({ filter: item => !ids.has(item.id) }));
+        for (const item of items) {
+            const current = dataSet.get(item.id);
+            if (current) for (const key in current) if (!(key in item)) item[key] = null;
+        }
+        dataSet.update(items);
+    }
+    addNode(node) {
+        this.graph().nodes.update(node);
+    }
+    removeNode(id) {
+        this.graph().edges.remove(this.edges.getIds({ filter: edge => edge.from === id || edge.to === id }));
+        this.nodes.remove(id);
+    }
+    // a further edge between the same nodes is numbered like in `parse`
+    addEdge(edge) {
+        const id = edge.from + "->" + edge.to;
+        edge.id = id;
+        for (let n = 1; this.graph().edges.get(edge.id); n++) edge.id = id + "#" + n;
+        this.edges.add(edge);
+    }
+    removeEdge(from, to) {
+        this.graph().edges.remove(this.edges.getIds({ filter: edge => edge.from === from && edge.to === to }));
     }
-}
\ No newline at end of file
+}
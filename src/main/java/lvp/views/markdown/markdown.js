@@ -0,0 +1,88 @@
+// Helpers for `MarkdownCell`
+//
+// Code is highlighted and formulas are typeset once a block comes into view, and
+// highlight.js and MathJax are loaded when a block first needs them. The result
+// is kept by the block's hash, so a block shown again, e.g. when the notebook is
+// run again, costs a copy.
+
+window.MathJax ??= {
+  svg: { fontCache: "local" }, // SVGs that do not refer to others can be copied
+  startup: { typeset: false }
+};
+
+// like an `Asset`: the copy served by the server first, then the alternatives;
+// see GetMathJax.md for the local copy of MathJax
+const markdownLibraries = {
+  hljs: ["views/markdown/highlight.min.js"],
+  MathJax: ["views/markdown/tex-svg.js", "https://cdn.jsdelivr.net/npm/mathjax@3/es5/tex-svg.js"]
+};
+const loadingLibraries = {};
+
+function markdownLibrary(name) {
+  if (name === "hljs" && window.hljs) return Promise.resolve();
+  return loadingLibraries[name] ??= markdownLibraries[name]
+    .reduce((loaded, src) => loaded.catch(() => loadLibraryScript(src)), Promise.reject())
+    .then(() => name === "MathJax" ? MathJax.startup.promise : undefined);
+}
+
+function loadLibraryScript(src) {
+  return new Promise((resolve, reject) => {
+    const script = document.createElement("script");
+    script.src = src;
+    script.onload = resolve;
+    script.onerror = () => {
+      script.remove();
+      reject(new Error("loading " + src + " failed"));
+    };
+    document.head.appendChild(script); // survives a CLEAR
+  });
+}
+
+const typesetBlocks = new Map(); // HTML by block hash
+const maxTypesetBlocks = 1000;
+let typesetting = Promise.resolve(); // MathJax typesets one block after the other
+
+const blockObserver = window.IntersectionObserver
+  ? new IntersectionObserver(entries => {
+      for (const entry of entries) {
+        if (!entry.isIntersecting) continue;
+        blockObserver.unobserve(entry.target);
+        typesetBlock(entry.target);
+      }
+    }, { rootMargin: "50% 0px" }) // a bit ahead of scrolling
+  : null;
+
+// the blocks of a cell that are new; those without code or formulas need nothing
+function typesetMarkdown(id) {
+  for (const block of document.getElementById(id).querySelectorAll(":scope > [data-hash]:not([data-typeset])")) {
+    block.dataset.typeset = "";
+    if (typesetBlocks.has(block.dataset.hash)) block.innerHTML = typesetBlocks.get(block.dataset.hash);
+    else if (!block.querySelector("code[class^=language-], .math")) continue;
+    else if (blockObserver) blockObserver.observe(block);
+    else typesetBlock(block);
+  }
+}
+
+function typesetBlock(block) {
+  const code = block.querySelectorAll("code[class^=language-]");
+  let done = Promise.resolve();
+  if (code.length > 0) done = markdownLibrary("hljs").then(() => code.forEach(element => hljs.highlightElement(element)));
+  if (block.querySelector(".math")) {
+    done = done.then(() => markdownLibrary("MathJax")).then(() => {
+      const typeset = typesetting.then(() => MathJax.typesetPromise([block]));
+      typesetting = typeset.catch(() => {}); // the next block goes on regardless
+      return typeset;
+    });
+  }
+  done.then(() => {
+    if (typesetBlocks.size >= maxTypesetBlocks) typesetBlocks.delete(typesetBlocks.keys().next().value);
+    typesetBlocks.set(block.dataset.hash, block.innerHTML);
+  }, console.error);
+}
+
+// replaces the preformatted markdown in a cell with its HTML
+function renderMarkdown(id, render) {
+  const cell = document.getElementById(id);
+  const script = cell.querySelector("script[type=preformatted]");
+  if (script) cell.innerHTML = render(script.textContent);
+}
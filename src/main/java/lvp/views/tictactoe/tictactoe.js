@@ -1,5 +1,6 @@
 class TicTacToe {
-    constructor(canvas, endpoint) {
+    // `id` names the widget and its path on the server, see `sendInput`
+    constructor(canvas, id) {
         this.canvas = canvas;
         this.ctx = canvas.getContext("2d");
         this.marginX = this.canvas.width / 20;
@@ -18,7 +19,7 @@ class TicTacToe {
             const indexX = Math.floor(event.offsetX / this.fieldWidth);
             const index = indexX + indexY * 3;
             console.log(`Clicked at X: ${indexX} Y: ${indexY} => ${index}`);
-            fetch(endpoint, {method: "post", body: index.toString()}).catch(console.log);
+            sendInput(id, id, index.toString());
         });
     }
 
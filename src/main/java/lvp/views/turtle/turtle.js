@@ -7,6 +7,7 @@ class Turtle {
 
     reset() {
         this.ctx.reset();
+        this.path = null;
         this.x = this.canvas.width / 2;
         this.y = this.canvas.height / 2;
         this.angle = 0;
@@ -74,6 +75,48 @@ class Turtle {
         this.y = y;
     }
 
+    textAt(text, font, align, x, y, angle) {
+        this.x = x;
+        this.y = y;
+        this.angle = angle;
+        this.text(text, font, align);
+    }
+
+    // binary command stream sent by lvp.views.Turtle: opcode byte + float64 args;
+    // the Java side tracks the turtle's state and sends ready-made polylines
+    run(base64) {
+        const binary = atob(base64);
+        const bytes = new Uint8Array(binary.length);
+        for (let i = 0; i < binary.length; i++) bytes[i] = binary.charCodeAt(i);
+        this.execute(new DataView(bytes.buffer));
+    }
+
+    execute(view) {
+        let pos = 0;
+        const arg = () => { const value = view.getFloat64(pos); pos += 8; return value; };
+        while (pos < view.byteLength) {
+            switch (view.getUint8(pos++)) {
+                case Turtle.RESET:      this.reset(); break;
+                case Turtle.COLOR:      this.color(`rgb(${arg()}, ${arg()}, ${arg()})`); break;
+                case Turtle.LINE_WIDTH: this.lineWidth(arg()); break;
+                case Turtle.PATH: {
+                    if (!this.path) this.path = new Path2D();
+                    const n = arg();
+                    this.path.moveTo(arg(), arg());
+                    for (let i = 1; i < n; i++) this.path.lineTo(arg(), arg());
+                    break;
+                }
+                case Turtle.STROKE:
+                    if (this.path) this.ctx.stroke(this.path);
+                    this.path = null;
+                    break;
+                default:
+                    console.error('Turtle: unknown opcode at', pos - 1);
+                    return;
+            }
+        }
+    }
+
     lineTo(x, y) {
         const originalPenState = this.isPenDown;
         this.isPenDown = true;
@@ -89,3 +132,6 @@ class Turtle {
         this.isPenDown = originalPenState;
     }
 }
+
+// opcodes, see lvp.views.Turtle
+Object.assign(Turtle, { RESET: 0, COLOR: 1, LINE_WIDTH: 2, PATH: 3, STROKE: 4 });
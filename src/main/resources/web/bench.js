@@ -0,0 +1,101 @@
+// Replays a recorded session (see `Server.record`) through script.js and the view
+// libraries and reports what it costs the browser: time to render, frames, the
+// longest frame, time per event type and memory.
+//
+//   web/bench.html?recording=/recording[&mode=stream]
+//
+// replays right away, otherwise pick a file and press "Replay". The results end up
+// in #benchResults as JSON and the title changes to "done", so headless browsers
+// can run it, e.g.
+//   chrome --headless --virtual-time-budget=60000 --dump-dom "http://localhost:50001/web/bench.html?recording=/recording"
+// A page can replay once only, since view libraries cannot be loaded twice.
+
+const benchStats = {}; // by event type: count and milliseconds spent in `handle`
+const handleEvent = handle;
+
+handle = function (action, data) {
+  const start = performance.now();
+  try {
+    handleEvent(action, data);
+  } finally {
+    const stats = benchStats[action] ??= { count: 0, ms: 0 };
+    stats.count++;
+    stats.ms += performance.now() - start;
+  }
+};
+
+function heapSize() { return performance.memory ? performance.memory.usedJSHeapSize : null; } // Chromium only
+
+// burst: everything in one go, like a browser joining late; stream: one event per task
+function feed(recording, mode) {
+  if (mode !== "stream") {
+    parseFrames(recording);
+    return Promise.resolve();
+  }
+  const frames = recording.split("\n\n").filter(frame => frame !== "");
+  const channel = new MessageChannel();
+  return new Promise(resolve => {
+    let next = 0;
+    channel.port1.onmessage = () => {
+      if (next == frames.length) {
+        channel.port1.close();
+        resolve();
+        return;
+      }
+      parseFrames(frames[next++] + "\n\n");
+      channel.port2.postMessage(null);
+    };
+    channel.port2.postMessage(null);
+  });
+}
+
+function replay(recording, mode) {
+  document.getElementById("benchRun").disabled = true;
+  const heapBefore = heapSize();
+  const start = performance.now();
+  let frames = 0, longestFrame = 0, lastFrame = start, fed = false;
+
+  feed(recording, mode).then(() => fed = true);
+
+  // done once all events are handled (including those waiting for a LOAD) and painted
+  return new Promise(resolve => {
+    function frame(now) {
+      frames++;
+      longestFrame = Math.max(longestFrame, now - lastFrame);
+      lastFrame = now;
+      if (fed && pendingLoads == 0 && waitingEvents.length == 0) resolve();
+      else requestAnimationFrame(frame);
+    }
+    requestAnimationFrame(frame);
+  }).then(() => {
+    const results = {
+      mode: mode,
+      bytes: recording.length,
+      events: Object.values(benchStats).reduce((sum, stats) => sum + stats.count, 0),
+      timeToRenderMs: Math.round(performance.now() - start),
+      frames: frames,
+      longestFrameMs: Math.round(longestFrame),
+      byType: Object.fromEntries(Object.entries(benchStats).map(([action, stats]) =>
+        [action, { count: stats.count, ms: Math.round(stats.ms * 10) / 10 }])),
+      domNodes: document.getElementsByTagName("*").length,
+      heapBytesBefore: heapBefore,
+      heapBytesAfter: heapSize()
+    };
+    document.getElementById("benchResults").textContent = JSON.stringify(results, null, 2);
+    console.log(results);
+    document.title = "done";
+  });
+}
+
+const benchParameters = new URLSearchParams(location.search);
+
+document.getElementById("benchRun").onclick = () => {
+  const file = document.getElementById("benchFile").files[0];
+  if (file) file.text().then(recording => replay(recording, document.getElementById("benchMode").value));
+};
+
+if (benchParameters.has("recording")) {
+  fetch(benchParameters.get("recording"))
+    .then(response => response.text())
+    .then(recording => replay(recording, benchParameters.get("mode") ?? "burst"));
+}
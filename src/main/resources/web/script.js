@@ -1,94 +1,112 @@
 const loadedDiv = document.getElementById('loadMessage');
 
-function loadScript(src, onError = () => console.log('script loading failed: ', src)) {
+// identifies this page towards the server, e.g. when acknowledging a LOAD
+const clientID = Math.random().toString(36).slice(2, 12);
+
+// the WebSocket, if the server offers one and it is open (see `Server.enableWebSocket`)
+let socket = null;
+
+function acknowledgeLoad(loadID, success) {
+  if (socket) socket.send(`loaded ${loadID}` + (success ? "" : " error"));
+  else fetch(`/loaded?id=${loadID}&client=${clientID}` + (success ? "" : "&error"), {method: "post"}).catch(console.log);
+}
+
+// Events are queued and handled once per animation frame, as many as fit into
+// `frameBudget` milliseconds, so that a burst of thousands of turtle calls is
+// drawn bit by bit instead of freezing the page. Events that arrive while scripts
+// are loading wait for them; this matters when a whole notebook is replayed at
+// once. Further LOADs start right away, and `async = false` makes the scripts
+// execute in the order they were requested.
+let pendingLoads = 0;
+const waitingEvents = [];
+const frameBudget = 8; // milliseconds, leaves the rest of a 60 Hz frame for layout and paint
+let drainScheduled = false;
+
+function dispatch(action, data) {
+  waitingEvents.push([action, data]);
+  scheduleDrain();
+}
+
+// hidden pages get no animation frames, yet the server waits for LOADs to be acknowledged
+function scheduleDrain() {
+  if (drainScheduled || waitingEvents.length == 0) return;
+  drainScheduled = true;
+  if (document.hidden) setTimeout(drain, 0);
+  else requestAnimationFrame(drain);
+}
+
+function drain() {
+  drainScheduled = false;
+  const start = performance.now();
+  do {
+    if (pendingLoads > 0 && waitingEvents[0][0] !== "LOAD") return; // loadFinished schedules the rest
+    try {
+      handle(...waitingEvents.shift());
+    } catch (error) {
+      console.error(error); // the events after it still get their turn
+    }
+  } while (waitingEvents.length > 0 && performance.now() - start < frameBudget);
+  scheduleDrain();
+}
+
+function loadFinished() {
+  pendingLoads--;
+  scheduleDrain();
+}
+
+function loadScript(src, loadID, onError = () => {
+  console.log('script loading failed: ', src);
+  acknowledgeLoad(loadID, false);
+  loadFinished();
+}) {
   //console.log('loadScript: ', new Date().toISOString(), ' src: ', src);
+  pendingLoads++;
   var script = document.createElement('script');
   script.src = src;
+  script.async = false;
   script.onload = function() {
     //console.log('loaded script: ', new Date().toISOString(), ' src: ', src);
     script.classList.add("persistent");
     //console.log('script loaded:', src);
-    fetch("/loaded", {method: "post"}).catch(console.log);
+    acknowledgeLoad(loadID, true);
+    loadFinished();
   };
   script.onerror = onError;
   document.body.appendChild(script);
 }
 
-function loadScriptWithFallback(mainSrc, alternativeSrc) {
-  loadScript(mainSrc, function() {
+function loadScriptWithFallback(mainSrc, alternativeSrc, loadID) {
+  loadScript(mainSrc, loadID, function() {
     console.log('loading', mainSrc, 'failed, trying', alternativeSrc);
-    loadScript(alternativeSrc);
+    loadScript(alternativeSrc, loadID);
+    loadFinished();
   });
 }
 
 function setUp() {
+  fetch("/websocket")
+    .then(response => response.ok ? response.text() : Promise.reject())
+    .then(port => connectWebSocket(port), () => connectEventSource());
+}
+
+// BASE64 framing: `data: <action>:<base64 encoded UTF-8 data>`
+function dispatchBase64(message) {
+  const splitPos = message.indexOf(":");
+  const action = message.slice(0, splitPos);
+  const base64Data = message.slice(splitPos + 1);
+  dispatch(action, new TextDecoder("utf-8").decode(Uint8Array.from(atob(base64Data), c => c.charCodeAt(0))));
+}
 
+function connectEventSource() {
   if (window.EventSource) {
-    const source = new EventSource(`/events`);
-
-    source.onmessage = function (event) {
-      const splitPos = event.data.indexOf(":");
-      const action = event.data.slice(0, splitPos);
-      const base64Data = event.data.slice(splitPos + 1);
-      const data = new TextDecoder("utf-8").decode(Uint8Array.from(atob(base64Data), c => c.charCodeAt(0)));
-      // const data = atob(base64Data);
-      // console.log(`Action: ${action}\n`);
-      // console.log(`Data: ${data}\n`);
-
-      switch (action) {
-        case "CALL": {
-          Function(data).apply(); // https://www.educative.io/answers/eval-vs-function-in-javascript
-          break;
-        }
-        case "SCRIPT": {
-          const newElement = document.createElement("script");
-          newElement.innerHTML = data;
-          document.body.appendChild(newElement);
-          break;
-        }
-        case "WRITE": {
-          const newElement = document.createElement("div");
-          newElement.innerHTML = data;
-          document.getElementById("events").appendChild(newElement);
-          break;
-        }
-        case "LOAD": {
-          loadedDiv.style.display = 'block';
-          //setTimeout(() => {
-          //  loadedDiv.style.display = 'none';
-          // }, 300);
-          var srcs = data.split(',');
-          srcs = srcs.map(src => src.trim());
-          //console.log('LOAD received: ', new Date().toISOString(), ' data: ', data);
-          // if (srcs.length >= 2) loadScriptWithFallback(srcs[0], srcs[1]);
-          if (srcs.length >= 2) loadScript(srcs[0]);
-          else loadScript(data);
-          break;
-        }
-        case "CLEAR": {
-          const element = document.getElementById("events");
-          while (element.firstChild) {
-            element.removeChild(element.firstChild);
-          }
-
-          const toRemove = [];
-          for (const node of document.body.children) {
-            if (node.classList == null || !node.classList.contains("persistent")) {
-              toRemove.push(node);
-            }
-          }
-          toRemove.forEach(x => document.body.removeChild(x));
-          
-          break;
-        }
-        case "RELEASE":
-          locks = locks.filter(lock => lock !== data);
-          break;
-        default:
-          console.log("Unknown Action");
-          break;
-      }
-    };
+    const source = new EventSource(`/events?client=${clientID}`);
+
+    // RAW framing: the SSE event type is the action, the data arrives as is
+    for (const action of ["WRITE", "CALL", "SCRIPT", "LOAD", "CLEAR", "RELEASE", "CELL"]) {
+      source.addEventListener(action, event => dispatch(action, event.data));
+    }
+
+    source.onmessage = event => dispatchBase64(event.data);
 
     source.onerror = function (error) {
       console.error("EventSource failed:", error);
@@ -101,8 +119,250 @@ function setUp() {
   }
 }
 
+// The WebSocket delivers the same SSE frames as `/events`, so they are parsed
+// here; like EventSource it reconnects and resumes after the last event id.
+let lastEventID = "";
+
+function connectWebSocket(port) {
+  const ws = new WebSocket(`ws://${location.hostname}:${port}/?client=${clientID}&lastEventID=${encodeURIComponent(lastEventID)}`);
+  let opened = false;
+  ws.onopen = () => {
+    opened = true;
+    socket = ws;
+  };
+  ws.onmessage = event => parseFrames(event.data);
+  ws.onclose = () => {
+    socket = null;
+    for (const input of Object.values(inputs)) input.busy = false; // their RELEASE is lost
+    if (opened) setTimeout(() => connectWebSocket(port), 1000);
+    else connectEventSource();
+  };
+}
+
+function parseFrames(text) {
+  for (const frame of text.split("\n\n")) {
+    if (frame === "") continue;
+    let action = null;
+    const data = [];
+    for (const line of frame.split("\n")) {
+      const colon = line.indexOf(":");
+      const field = line.slice(0, colon);
+      const value = line.slice(colon + (line[colon + 1] === " " ? 2 : 1));
+      if (field === "id") lastEventID = value;
+      else if (field === "event") action = value;
+      else if (field === "data") data.push(value);
+    }
+    if (action) dispatch(action, data.join("\n"));
+    else dispatchBase64(data.join("\n"));
+  }
+}
+
+function handle(action, data) {
+  // console.log(`Action: ${action}\n`);
+  // console.log(`Data: ${data}\n`);
+
+  switch (action) {
+    case "CALL": {
+      let calls;
+      try {
+        calls = Function(data); // https://www.educative.io/answers/eval-vs-function-in-javascript
+      } catch (error) {
+        if (!data.startsWith("//batch ")) throw error;
+        callOneByOne(data);
+        break;
+      }
+      calls.apply();
+      break;
+    }
+    case "SCRIPT": {
+      const newElement = document.createElement("script");
+      newElement.innerHTML = data;
+      container("scripts").appendChild(newElement);
+      break;
+    }
+    case "WRITE": {
+      const newElement = document.createElement("div");
+      newElement.innerHTML = data;
+      document.getElementById("events").appendChild(newElement);
+      break;
+    }
+    case "CELL": {
+      const splitPos = data.indexOf(":"); // `<cell id>:<html>`
+      const cellID = data.slice(0, splitPos);
+      let cell = cells.get(cellID);
+      if (!cell) {
+        cell = document.createElement("div");
+        cell.id = cellID;
+        cells.set(cellID, cell);
+        document.getElementById("events").appendChild(cell);
+      }
+      const template = document.createElement("template");
+      template.innerHTML = data.slice(splitPos + 1);
+      patch(cell, template.content);
+      break;
+    }
+    case "LOAD": {
+      loadedDiv.style.display = 'block';
+      //setTimeout(() => {
+      //  loadedDiv.style.display = 'none';
+      // }, 300);
+      const splitPos = data.indexOf(":"); // `<load id>:<paths>`
+      const loadID = data.slice(0, splitPos);
+      const paths = data.slice(splitPos + 1);
+      var srcs = paths.split(',');
+      srcs = srcs.map(src => src.trim());
+      //console.log('LOAD received: ', new Date().toISOString(), ' data: ', data);
+      // if (srcs.length >= 2) loadScriptWithFallback(srcs[0], srcs[1], loadID);
+      if (srcs.length >= 2) loadScript(srcs[0], loadID);
+      else loadScript(paths, loadID);
+      break;
+    }
+    case "CLEAR": {
+      // fresh containers instead of removing the output node by node
+      for (const id of ["events", "scripts"]) {
+        const element = container(id);
+        element.replaceWith(element.cloneNode(false));
+      }
+      cells = new Map();
+
+      // whatever else views have put into the body
+      const toRemove = [];
+      for (const node of document.body.children) {
+        if (node.classList == null || !node.classList.contains("persistent")) {
+          toRemove.push(node);
+        }
+      }
+      toRemove.forEach(x => document.body.removeChild(x));
+      
+      break;
+    }
+    case "RELEASE":
+      locks = locks.filter(lock => lock !== data);
+      if (inputs[data]) requestAnimationFrame(() => {
+        inputLatencies.push(performance.now() - inputs[data].sentAt);
+        if (inputLatencies.length > 100) inputLatencies.shift();
+        sendPendingInput(data);
+      });
+      break;
+    default:
+      console.log("Unknown Action");
+      break;
+  }
+}
+
+// A batch (see `Batcher.join`) with a call that does not parse: the first line
+// lists the lengths of the calls' blocks, which are compiled one by one instead.
+function callOneByOne(batch) {
+  const newline = batch.indexOf("\n");
+  let start = newline + 1;
+  for (const length of batch.slice("//batch ".length, newline).split(" ").map(Number)) {
+    const block = batch.slice(start, start + length);
+    start += length;
+    try {
+      Function(block).apply();
+    } catch (error) {
+      console.error(error);
+    }
+  }
+}
+
+// Cells (see `Server.writeCell`) by id. Their content is patched rather than
+// replaced, so nodes that did not change keep their state, e.g. a canvas or the
+// focus of an input, and the browser lays out only what did change.
+let cells = new Map();
+
+function container(id) {
+  let element = document.getElementById(id);
+  if (!element) {
+    element = document.createElement("div");
+    element.id = id;
+    element.className = "persistent";
+    document.body.appendChild(element);
+  }
+  return element;
+}
+
+// Makes the children of `target` look like those of `source`, node by node.
+// Elements with a `data-hash` stand for their content: one whose hash is already
+// there is kept as it is, wherever it is, e.g. a markdown block (see `MarkdownCell`).
+function patch(target, source) {
+  const wanted = [...source.childNodes];
+  const hashed = new Map();
+  for (const child of target.children) {
+    if (child.dataset.hash && !hashed.has(child.dataset.hash)) hashed.set(child.dataset.hash, child);
+  }
+  const wantedHashes = new Set(wanted.map(node => node.nodeType === Node.ELEMENT_NODE && node.dataset.hash));
+  for (let i = 0; i < wanted.length; i++) {
+    const node = wanted[i];
+    const current = target.childNodes[i];
+    const kept = node.nodeType === Node.ELEMENT_NODE && node.dataset.hash ? hashed.get(node.dataset.hash) : undefined;
+    if (kept) {
+      hashed.delete(node.dataset.hash);
+      if (kept !== current) target.insertBefore(kept, current);
+    }
+    else if (!current) target.appendChild(node);
+    else if (current.nodeType === Node.ELEMENT_NODE && hashed.get(current.dataset.hash) === current
+             && wantedHashes.has(current.dataset.hash)) target.insertBefore(node, current); // comes later
+    else if (current.nodeType !== node.nodeType || current.nodeName !== node.nodeName) target.replaceChild(node, current);
+    else if (node.nodeType === Node.ELEMENT_NODE) {
+      patchAttributes(current, node);
+      patch(current, node);
+    }
+    else if (current.nodeValue !== node.nodeValue) current.nodeValue = node.nodeValue;
+  }
+  while (target.childNodes.length > wanted.length) target.removeChild(target.lastChild);
+}
+
+function patchAttributes(target, source) {
+  for (const attribute of [...target.attributes]) {
+    if (!source.hasAttribute(attribute.name)) target.removeAttribute(attribute.name);
+  }
+  for (const attribute of source.attributes) {
+    if (target.getAttribute(attribute.name) !== attribute.value) target.setAttribute(attribute.name, attribute.value);
+  }
+}
+
 const Clerk = {}; // not used, yet
 let locks = [];
-setUp();
+
+// Widget values (see `Server.createInputContext`): one value per widget is on its
+// way at a time. Newer values replace the pending one, which is sent once the
+// server releases the widget, at most once per frame. Via WebSocket all widgets
+// share the socket instead of posting to their own context.
+const inputs = {};
+
+// milliseconds from sending a value to the frame after its redraw, for the last 100 values;
+// `console.log(inputLatency())` shows the median in the browser's console
+const inputLatencies = [];
+
+function inputLatency() {
+  const sorted = [...inputLatencies].sort((a, b) => a - b);
+  return sorted[Math.floor(sorted.length / 2)];
+}
+
+function sendInput(id, path, value) {
+  const input = inputs[id] ??= { busy: false, value: null };
+  input.path = path;
+  input.value = value.toString();
+  if (!input.busy) sendPendingInput(id);
+}
+
+function sendPendingInput(id) {
+  const input = inputs[id];
+  input.busy = input.value !== null;
+  if (!input.busy) return;
+  const value = input.value;
+  input.value = null;
+  input.sentAt = performance.now();
+  if (socket) {
+    socket.send(`input ${input.path}\n${value}`);
+    return;
+  }
+  fetch(`${input.path}?client=${clientID}`, { method: "post", body: value }).catch(error => {
+    console.error(error);
+    input.busy = false;
+  });
+}
+if (!document.body.hasAttribute("data-replay")) setUp(); // web/bench.html replays recordings instead
 
 // https://samthor.au/2020/understanding-load/
\ No newline at end of file